@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.BucketFunction;
+import com.facebook.presto.spi.Page;
+import com.facebook.presto.spi.type.Type;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.facebook.presto.plugin.phoenix.TypeUtils.toPhoenixObject;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+public class PhoenixBucketFunction
+        implements BucketFunction
+{
+    private final PhoenixPartitioningHandle partitioningHandle;
+    private final RowKeyEncoder rowKeyEncoder;
+    private final List<Type> types;
+
+    public PhoenixBucketFunction(PhoenixPartitioningHandle partitioningHandle, List<Type> types)
+    {
+        this.partitioningHandle = requireNonNull(partitioningHandle, "partitioningHandle is null");
+        this.rowKeyEncoder = partitioningHandle.createRowKeyEncoder();
+        this.types = ImmutableList.copyOf(requireNonNull(types, "types is null"));
+        checkArgument(types.size() == rowKeyEncoder.getKeyColumnCount(), "partitioning requires all %s row key columns", rowKeyEncoder.getKeyColumnCount());
+    }
+
+    @Override
+    public int getBucket(Page page, int position)
+    {
+        Object[] values = new Object[types.size()];
+        for (int channel = 0; channel < types.size(); channel++) {
+            values[channel] = toPhoenixObject(types.get(channel), page.getBlock(channel), position);
+        }
+        return partitioningHandle.getBucket(rowKeyEncoder.encode(values));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.ConnectorSplit;
+import com.facebook.presto.spi.ConnectorSplitSource;
+import com.facebook.presto.spi.connector.ConnectorPartitionHandle;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Split source for grouped execution, handing out the splits of one salt bucket at a time.
+ */
+public class PhoenixBucketSplitSource
+        implements ConnectorSplitSource
+{
+    private final Map<Integer, Deque<PhoenixSplit>> bucketSplits = new HashMap<>();
+
+    public PhoenixBucketSplitSource(List<PhoenixSplit> splits)
+    {
+        for (PhoenixSplit split : splits) {
+            bucketSplits.computeIfAbsent(split.getSaltBucket(), bucket -> new ArrayDeque<>()).add(split);
+        }
+    }
+
+    @Override
+    public synchronized CompletableFuture<ConnectorSplitBatch> getNextBatch(ConnectorPartitionHandle partitionHandle, int maxSize)
+    {
+        int bucket = ((PhoenixPartitionHandle) partitionHandle).getBucket();
+        Deque<PhoenixSplit> splits = bucketSplits.getOrDefault(bucket, new ArrayDeque<>());
+
+        ImmutableList.Builder<ConnectorSplit> batch = ImmutableList.builder();
+        for (int i = 0; i < maxSize && !splits.isEmpty(); i++) {
+            batch.add(splits.poll());
+        }
+        return completedFuture(new ConnectorSplitBatch(batch.build(), splits.isEmpty()));
+    }
+
+    @Override
+    public synchronized boolean isFinished()
+    {
+        return bucketSplits.values().stream().allMatch(Deque::isEmpty);
+    }
+
+    @Override
+    public void close()
+    {
+    }
+}
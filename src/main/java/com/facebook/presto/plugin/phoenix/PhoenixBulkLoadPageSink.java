@@ -0,0 +1,250 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.ConnectorPageSink;
+import com.facebook.presto.spi.Page;
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.collect.ImmutableList;
+import io.airlift.log.Logger;
+import io.airlift.slice.Slice;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.schema.PTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.UUID.randomUUID;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Writes pages to HFiles in the bulk load directory of the output handle, which are loaded into the
+ * table when the write finishes. Cells are buffered, sorted by key and written to one file per column
+ * family and region each time the buffer fills up.
+ */
+public class PhoenixBulkLoadPageSink
+        implements ConnectorPageSink
+{
+    private static final Logger log = Logger.get(PhoenixBulkLoadPageSink.class);
+
+    // all cells of a write have the timestamp of the output handle, so of the cells of a column of a row only the last one written is kept
+    private static final Comparator<Cell> COLUMN_ORDER = (left, right) -> {
+        int result = CellComparator.compareRows(left, right);
+        return result != 0 ? result : CellComparator.compareColumns(left, right);
+    };
+
+    private final PTable table;
+    private final PhoenixMutationEncoder encoder;
+    private final Configuration configuration;
+    private final FileSystem fileSystem;
+    private final Path directory;
+    private final List<byte[]> splitKeys;
+    private final long maxBufferSize;
+    private final HTableDescriptor tableDescriptor;
+    private final long timestamp;
+    private final List<Path> files = new ArrayList<>();
+
+    private List<KeyValue> buffer = new ArrayList<>();
+    private long bufferSize;
+
+    public PhoenixBulkLoadPageSink(PhoenixOutputTableHandle handle, PTable table, PhoenixClient phoenixClient, PhoenixRowkeyGenerator rowkeyGenerator, long maxBufferSize)
+    {
+        checkArgument(handle.getBulkLoadDirectory().isPresent(), "handle has no bulk load directory");
+        this.timestamp = handle.getBulkLoadTimestamp().getAsLong();
+        this.table = requireNonNull(table, "table is null");
+        this.encoder = new PhoenixMutationEncoder(handle, table, rowkeyGenerator);
+        this.configuration = phoenixClient.getHBaseConfiguration();
+        this.directory = new Path(handle.getBulkLoadDirectory().get());
+        try {
+            this.fileSystem = directory.getFileSystem(configuration);
+        }
+        catch (IOException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        this.tableDescriptor = phoenixClient.getTableDescriptor(table);
+        this.splitKeys = phoenixClient.getRegionSplitKeys(table);
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    @Override
+    public CompletableFuture<?> appendPage(Page page)
+    {
+        for (Mutation mutation : encoder.encode(page, timestamp)) {
+            for (List<Cell> cells : mutation.getFamilyCellMap().values()) {
+                for (Cell cell : cells) {
+                    KeyValue keyValue = KeyValueUtil.ensureKeyValue(cell);
+                    buffer.add(keyValue);
+                    bufferSize += keyValue.heapSize();
+                }
+            }
+        }
+        if (bufferSize >= maxBufferSize) {
+            writeFiles();
+        }
+        return NOT_BLOCKED;
+    }
+
+    @Override
+    public long getSystemMemoryUsage()
+    {
+        return bufferSize;
+    }
+
+    @Override
+    public CompletableFuture<Collection<Slice>> finish()
+    {
+        if (!buffer.isEmpty()) {
+            writeFiles();
+        }
+        return completedFuture(ImmutableList.of());
+    }
+
+    @Override
+    public void abort()
+    {
+        buffer = new ArrayList<>();
+        bufferSize = 0;
+        for (Path file : files) {
+            try {
+                fileSystem.delete(file, false);
+            }
+            catch (IOException e) {
+                log.warn(e, "Failed to delete HFile %s", file);
+            }
+        }
+    }
+
+    private void writeFiles()
+    {
+        // stable, so cells of the same column of a row stay in the order they were written
+        buffer.sort(COLUMN_ORDER);
+
+        Map<String, StoreFile.Writer> writers = new HashMap<>();
+        int region = -1;
+        try {
+            for (int i = 0; i < buffer.size(); i++) {
+                KeyValue cell = buffer.get(i);
+                if (i + 1 < buffer.size() && COLUMN_ORDER.compare(cell, buffer.get(i + 1)) == 0) {
+                    continue;
+                }
+                if (region < 0 || (region < splitKeys.size() && compareRow(cell, splitKeys.get(region)) >= 0)) {
+                    // an HFile must not span a region boundary
+                    closeWriters(writers);
+                    region = getRegion(cell);
+                }
+                String family = Bytes.toString(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength());
+                StoreFile.Writer writer = writers.get(family);
+                if (writer == null) {
+                    writer = createWriter(family);
+                    writers.put(family, writer);
+                }
+                writer.append(cell);
+            }
+            closeWriters(writers);
+        }
+        catch (IOException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        finally {
+            writers.values().forEach(this::closeQuietly);
+            buffer = new ArrayList<>();
+            bufferSize = 0;
+        }
+    }
+
+    private int getRegion(Cell cell)
+    {
+        int index = Collections.binarySearch(splitKeys, CellUtil.cloneRow(cell), Bytes.BYTES_COMPARATOR);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static int compareRow(Cell cell, byte[] key)
+    {
+        return Bytes.compareTo(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength(), key, 0, key.length);
+    }
+
+    private StoreFile.Writer createWriter(String family)
+            throws IOException
+    {
+        HColumnDescriptor descriptor = tableDescriptor.getFamily(Bytes.toBytes(family));
+        if (descriptor == null) {
+            throw new PrestoException(PHOENIX_ERROR, format("Column family %s does not exist in %s", family, tableDescriptor.getNameAsString()));
+        }
+        // the same file settings as HFileOutputFormat2, so the loaded files match the ones the region servers write
+        HFileContext context = new HFileContextBuilder()
+                .withCompression(descriptor.getCompressionType())
+                .withChecksumType(HStore.getChecksumType(configuration))
+                .withBytesPerCheckSum(HStore.getBytesPerChecksum(configuration))
+                .withBlockSize(descriptor.getBlocksize())
+                .withDataBlockEncoding(descriptor.getDataBlockEncoding())
+                .build();
+        Path file = new Path(new Path(directory, family), randomUUID().toString().replace("-", ""));
+        files.add(file);
+        return new StoreFile.WriterBuilder(configuration, CacheConfig.DISABLED, fileSystem)
+                .withFilePath(file)
+                .withComparator(KeyValue.COMPARATOR)
+                .withBloomType(descriptor.getBloomFilterType())
+                .withFileContext(context)
+                .build();
+    }
+
+    private void closeWriters(Map<String, StoreFile.Writer> writers)
+            throws IOException
+    {
+        for (StoreFile.Writer writer : writers.values()) {
+            writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+            writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(false));
+            writer.appendTrackedTimestampsToMetadata();
+            writer.close();
+        }
+        writers.clear();
+    }
+
+    private void closeQuietly(StoreFile.Writer writer)
+    {
+        try {
+            writer.close();
+        }
+        catch (IOException e) {
+            log.warn(e, "Failed to close HFile writer of %s", table.getName().getString());
+        }
+    }
+}
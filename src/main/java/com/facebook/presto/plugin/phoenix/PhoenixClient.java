@@ -16,13 +16,14 @@ package com.facebook.presto.plugin.phoenix;
 import com.facebook.presto.spi.ColumnHandle;
 import com.facebook.presto.spi.ColumnMetadata;
 import com.facebook.presto.spi.ConnectorSession;
-import com.facebook.presto.spi.ConnectorSplitSource;
 import com.facebook.presto.spi.ConnectorTableMetadata;
-import com.facebook.presto.spi.FixedSplitSource;
 import com.facebook.presto.spi.HostAddress;
 import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.SchemaTableName;
 import com.facebook.presto.spi.TableNotFoundException;
+import com.facebook.presto.spi.predicate.Domain;
+import com.facebook.presto.spi.predicate.NullableValue;
+import com.facebook.presto.spi.predicate.Range;
 import com.facebook.presto.spi.predicate.TupleDomain;
 import com.facebook.presto.spi.type.ArrayType;
 import com.facebook.presto.spi.type.CharType;
@@ -31,22 +32,38 @@ import com.facebook.presto.spi.type.Type;
 import com.facebook.presto.spi.type.TypeManager;
 import com.facebook.presto.spi.type.VarcharType;
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.airlift.log.Logger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.RegionLocator;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.SnapshotDescription;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.compile.ColumnProjector;
 import org.apache.phoenix.compile.QueryPlan;
 import org.apache.phoenix.coprocessor.BaseScannerRegionObserver;
+import org.apache.phoenix.execute.ScanPlan;
+import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.iterate.ConcatResultIterator;
 import org.apache.phoenix.iterate.LookAheadResultIterator;
 import org.apache.phoenix.iterate.MapReduceParallelScanGrouper;
@@ -57,43 +74,65 @@ import org.apache.phoenix.iterate.SequenceResultIterator;
 import org.apache.phoenix.iterate.TableResultIterator;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.jdbc.PhoenixDriver;
+import org.apache.phoenix.jdbc.PhoenixPreparedStatement;
 import org.apache.phoenix.jdbc.PhoenixResultSet;
 import org.apache.phoenix.jdbc.PhoenixStatement;
-import org.apache.phoenix.parse.PFunction;
 import org.apache.phoenix.query.KeyRange;
 import org.apache.phoenix.query.QueryConstants;
 import org.apache.phoenix.query.QueryServices;
 import org.apache.phoenix.schema.AmbiguousColumnException;
 import org.apache.phoenix.schema.ColumnNotFoundException;
 import org.apache.phoenix.schema.PColumn;
-import org.apache.phoenix.schema.PMetaData;
+import org.apache.phoenix.schema.PIndexState;
 import org.apache.phoenix.schema.PName;
 import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.PTableKey;
+import org.apache.phoenix.schema.PTableRef;
 import org.apache.phoenix.schema.PTableRefFactory;
-import org.apache.phoenix.schema.PTableType;
 import org.apache.phoenix.schema.TableProperty;
 import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDecimal;
+import org.apache.phoenix.util.IndexUtil;
+import org.apache.phoenix.util.SchemaUtil;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.GuardedBy;
 import javax.inject.Inject;
 
 import java.io.IOException;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static com.facebook.presto.plugin.phoenix.TableUtils.getQueryTableSql;
+import static com.facebook.presto.plugin.phoenix.TableUtils.isQueryTable;
 import static com.facebook.presto.plugin.phoenix.TypeUtils.isArrayType;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.toPhoenixObject;
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_TABLE_PROPERTY;
 import static com.facebook.presto.spi.StandardErrorCode.NOT_FOUND;
 import static com.facebook.presto.spi.StandardErrorCode.NOT_SUPPORTED;
 import static com.facebook.presto.spi.type.BigintType.BIGINT;
@@ -113,18 +152,28 @@ import static com.facebook.presto.spi.type.VarbinaryType.VARBINARY;
 import static com.facebook.presto.spi.type.VarcharType.VARCHAR;
 import static com.facebook.presto.spi.type.VarcharType.createUnboundedVarcharType;
 import static com.facebook.presto.spi.type.VarcharType.createVarcharType;
+import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.collect.Maps.immutableEntry;
 import static java.lang.Math.min;
 import static java.util.Locale.ENGLISH;
 import static java.util.Objects.requireNonNull;
+import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.function.Function.identity;
 import static org.apache.hadoop.hbase.HConstants.FOREVER;
 import static org.apache.phoenix.util.PhoenixRuntime.getTable;
 
 public class PhoenixClient
 {
     public static final String ROWKEY = "ROWKEY";
+    public static final long UNKNOWN_TABLE_TIMESTAMP = -1;
+    private static final int MAX_POINT_LOOKUP_KEYS = 10_000;
     private static final Logger log = Logger.get(PhoenixClient.class);
     private static final Map<Type, String> SQL_TYPES = ImmutableMap.<Type, String>builder()
             .put(BOOLEAN, "BOOLEAN")
@@ -147,11 +196,23 @@ public class PhoenixClient
     private final String connectionUrl;
     private final Properties connectionProperties;
     private final TypeManager typeManager;
+    private final PhoenixMetadataCache metadataCache;
 
     private final Map<String, HostAddress> hostCache = new HashMap<>();
+    private final ExecutorService metadataListingExecutor;
+    private final PhoenixConnectionPool connectionPool;
+    // keyed by physical table name and PTable timestamp, so any Phoenix DDL yields a new entry
+    private final Cache<Map.Entry<String, Long>, Map<String, Object>> columnFamilyProperties;
+    private final Optional<String> bulkLoadStagingDirectory;
+    private final PhoenixRowkeyGenerator rowkeyGenerator;
+
+    @GuardedBy("this")
+    private HBaseAdmin admin;
+    @GuardedBy("this")
+    private Connection hbaseConnection;
 
     @Inject
-    public PhoenixClient(PhoenixConnectorId connectorId, PhoenixConfig config, TypeManager typeManager) throws SQLException
+    public PhoenixClient(PhoenixConnectorId connectorId, PhoenixConfig config, TypeManager typeManager, PhoenixMetadataCache metadataCache) throws SQLException
     {
         this.connectorId = requireNonNull(connectorId, "connectorId is null").toString();
 
@@ -160,14 +221,41 @@ public class PhoenixClient
         connectionProperties = new Properties();
         connectionProperties.setProperty(QueryServices.CLIENT_CACHE_ENCODING, PTableRefFactory.Encoding.PROTOBUF.toString());
         connectionProperties.putAll(config.getConnectionProperties());
+        if (config.isRowKeyOrderedScans()) {
+            connectionProperties.setProperty(QueryServices.FORCE_ROW_KEY_ORDER_ATTRIB, Boolean.TRUE.toString());
+        }
 
         this.typeManager = requireNonNull(typeManager, "typeManager is null");
+        this.metadataCache = requireNonNull(metadataCache, "metadataCache is null");
+        this.metadataListingExecutor = newFixedThreadPool(
+                config.getMetadataListingThreads(),
+                new ThreadFactoryBuilder().setNameFormat("phoenix-metadata-listing-" + this.connectorId + "-%s").setDaemon(true).build());
+        this.connectionPool = new PhoenixConnectionPool(this::openConnection, this.connectorId, config.getConnectionPoolMaxSize(), config.getConnectionPoolIdleTimeout());
+        this.columnFamilyProperties = CacheBuilder.newBuilder()
+                .maximumSize(config.getMetadataCacheMaximumSize())
+                .build();
+        this.bulkLoadStagingDirectory = Optional.ofNullable(config.getBulkLoadStagingDirectory());
+        this.rowkeyGenerator = config.getRowkeyGenerator();
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        metadataListingExecutor.shutdownNow();
+        closeAdmin();
+        closeHBaseConnection();
+        connectionPool.close();
     }
 
     public Set<String> getSchemaNames()
     {
-        try (PhoenixConnection connection = getConnection();
-                ResultSet resultSet = connection.getMetaData().getSchemas()) {
+        return metadataCache.getSchemaNames(this::loadSchemaNames);
+    }
+
+    private Set<String> loadSchemaNames()
+    {
+        try (PhoenixConnectionLease lease = leaseConnection();
+                ResultSet resultSet = lease.getConnection().getMetaData().getSchemas()) {
             ImmutableSet.Builder<String> schemaNames = ImmutableSet.builder();
             while (resultSet.next()) {
                 String schemaName = resultSet.getString("TABLE_SCHEM").toLowerCase(ENGLISH);
@@ -185,7 +273,8 @@ public class PhoenixClient
 
     public List<SchemaTableName> getTableNames(@Nullable String schema)
     {
-        try (PhoenixConnection connection = getConnection()) {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
             DatabaseMetaData metadata = connection.getMetaData();
             if (metadata.storesUpperCaseIdentifiers() && (schema != null)) {
                 schema = schema.toUpperCase(ENGLISH);
@@ -203,13 +292,106 @@ public class PhoenixClient
         }
     }
 
+    /**
+     * Lists the columns of all tables in the schema, or in all schemas, with one SYSTEM.CATALOG
+     * column scan per schema instead of a table handle and column lookup per table. Schemas are listed
+     * concurrently. Table properties are not read, so HBase is not involved.
+     */
+    public Map<SchemaTableName, List<ColumnMetadata>> listTableColumns(@Nullable String schema)
+    {
+        Set<String> schemaNames = schema == null ? getSchemaNames() : ImmutableSet.of(schema);
+        List<Future<Map<SchemaTableName, List<ColumnMetadata>>>> futures = schemaNames.stream()
+                .map(schemaName -> metadataListingExecutor.submit(() -> listSchemaColumns(schemaName)))
+                .collect(Collectors.toList());
+
+        ImmutableMap.Builder<SchemaTableName, List<ColumnMetadata>> columns = ImmutableMap.builder();
+        try {
+            for (Future<Map<SchemaTableName, List<ColumnMetadata>>> future : futures) {
+                columns.putAll(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        catch (ExecutionException e) {
+            throwIfUnchecked(e.getCause());
+            throw new PrestoException(PHOENIX_ERROR, e.getCause());
+        }
+        finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return columns.build();
+    }
+
+    private Map<SchemaTableName, List<ColumnMetadata>> listSchemaColumns(String schema)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            DatabaseMetaData metadata = connection.getMetaData();
+            String schemaName = metadata.storesUpperCaseIdentifiers() ? schema.toUpperCase(ENGLISH) : schema;
+
+            // the column listing includes index tables, whose column names are qualified with the separator
+            Set<SchemaTableName> indexTableNames = new HashSet<>();
+            Map<SchemaTableName, ImmutableList.Builder<ColumnMetadata>> columns = new LinkedHashMap<>();
+            String escape = metadata.getSearchStringEscape();
+            try (ResultSet resultSet = metadata.getColumns(connection.getCatalog(), escapeNamePattern(schemaName, escape), null, null)) {
+                while (resultSet.next()) {
+                    SchemaTableName tableName = getSchemaTableName(resultSet);
+                    String columnName = resultSet.getString("COLUMN_NAME");
+                    if (columnName.contains(IndexUtil.INDEX_COLUMN_NAME_SEP)) {
+                        indexTableNames.add(tableName);
+                        continue;
+                    }
+                    if (ROWKEY.equals(columnName)) {
+                        continue;
+                    }
+                    Type columnType = toPrestoType(resultSet.getInt("DATA_TYPE"), resultSet.getInt("COLUMN_SIZE"), resultSet.getInt("DECIMAL_DIGITS"), resultSet.getInt("ARRAY_SIZE"), resultSet.getInt("TYPE_ID"));
+                    // skip unsupported column types
+                    if (columnType != null) {
+                        columns.computeIfAbsent(tableName, key -> ImmutableList.builder())
+                                .add(new PhoenixColumnHandle(connectorId, columnName, columnType).getColumnMetadata());
+                    }
+                }
+            }
+            return columns.entrySet().stream()
+                    .filter(entry -> !indexTableNames.contains(entry.getKey()))
+                    .collect(toImmutableMap(Map.Entry::getKey, entry -> entry.getValue().build()));
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
     @Nullable
     public PhoenixTableHandle getTableHandle(SchemaTableName schemaTableName)
     {
+        if (isQueryTable(schemaTableName.getTableName())) {
+            return loadTableHandle(schemaTableName);
+        }
+        return metadataCache.getTableHandle(schemaTableName, () -> Optional.ofNullable(loadTableHandle(schemaTableName))).orElse(null);
+    }
+
+    @Nullable
+    private PhoenixTableHandle loadTableHandle(SchemaTableName schemaTableName)
+    {
+        if (isQueryTable(schemaTableName.getTableName())) {
+            // compile the query to fail early on invalid SQL
+            try (PhoenixConnectionLease lease = leaseConnection()) {
+                PhoenixConnection connection = lease.getConnection();
+                getQueryTablePlan(connection, schemaTableName.getTableName());
+            }
+            catch (SQLException e) {
+                throw new PrestoException(PHOENIX_ERROR, e);
+            }
+            return new PhoenixTableHandle(connectorId, schemaTableName, null, schemaTableName.getSchemaName(), schemaTableName.getTableName());
+        }
+
         String schemaName = schemaTableName.getSchemaName();
         String tableName = TableUtils.normalizeTableName(schemaTableName.getTableName());
 
-        try (PhoenixConnection connection = getConnection()) {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
             DatabaseMetaData metadata = connection.getMetaData();
             if (metadata.storesUpperCaseIdentifiers()) {
                 schemaName = schemaName.toUpperCase(ENGLISH);
@@ -246,7 +428,19 @@ public class PhoenixClient
 
     public List<PhoenixColumnHandle> getColumns(PhoenixTableHandle tableHandle, boolean reqiuredRowKey)
     {
-        try (PhoenixConnection connection = getConnection()) {
+        if (isQueryTable(tableHandle.getTableName())) {
+            return loadColumns(tableHandle, reqiuredRowKey);
+        }
+        return metadataCache.getColumns(tableHandle.getSchemaTableName(), reqiuredRowKey, () -> loadColumns(tableHandle, reqiuredRowKey));
+    }
+
+    private List<PhoenixColumnHandle> loadColumns(PhoenixTableHandle tableHandle, boolean reqiuredRowKey)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            if (isQueryTable(tableHandle.getTableName())) {
+                return getQueryTableColumns(connection, tableHandle.getTableName());
+            }
             try (ResultSet resultSet = getColumns(tableHandle, connection.getMetaData())) {
                 List<PhoenixColumnHandle> columns = new ArrayList<>();
                 boolean found = false;
@@ -278,14 +472,303 @@ public class PhoenixClient
         }
     }
 
-    public ConnectorSplitSource getSplits(PhoenixTableLayoutHandle layoutHandle)
+    /**
+     * Whether the scans of a split are concatenated in row key order, either through row-key-ordered-scans
+     * or a phoenix.query.force.rowkeyorder connection property. Only then do table layouts declare a sort order.
+     */
+    public boolean isRowKeyOrdered()
+    {
+        return Boolean.parseBoolean(connectionProperties.getProperty(QueryServices.FORCE_ROW_KEY_ORDER_ATTRIB));
+    }
+
+    public PTable getPTable(PhoenixTableHandle handle)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            return getPTable(connection, handle);
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    public static PTable getPTable(PhoenixConnection connection, PhoenixTableHandle handle)
+            throws SQLException
+    {
+        return getTable(connection, getPhoenixFullTableName(handle.getSchemaName(), handle.getTableName(), connection.getMetaData().storesUpperCaseIdentifiers()));
+    }
+
+    /**
+     * Returns the HBase descriptor of the physical table of the table.
+     */
+    public HTableDescriptor getTableDescriptor(PTable table)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            return getTableDescriptor(lease.getConnection(), table.getPhysicalName().getBytes());
+        }
+        catch (IOException | SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    /**
+     * Returns the start keys of all regions of the table but the first one, in row key order.
+     */
+    public List<byte[]> getRegionSplitKeys(PTable table)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            return lease.getConnection().getQueryServices().getAllTableRegions(table.getPhysicalName().getBytes()).stream()
+                    .map(location -> location.getRegionInfo().getStartKey())
+                    .filter(startKey -> startKey.length > 0)
+                    .sorted(Bytes.BYTES_COMPARATOR)
+                    .collect(toImmutableList());
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    /**
+     * Returns the table written through the output handle, as of the version the write was planned against.
+     */
+    public PTable getPTable(PhoenixOutputTableHandle handle)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection(handle.getSchemaName(), handle.getTableName(), handle.getTableTimestamp())) {
+            PhoenixConnection connection = lease.getConnection();
+            return getTable(connection, getPhoenixFullTableName(handle.getSchemaName(), handle.getTableName(), connection.getMetaData().storesUpperCaseIdentifiers()));
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    /**
+     * Creates a mutator that writes to the HBase table of the Phoenix table directly, buffering up to
+     * the given number of bytes. All mutators share one HBase connection, which outlives them.
+     */
+    public BufferedMutator createBufferedMutator(PTable table, long writeBufferSize)
+    {
+        BufferedMutatorParams params = new BufferedMutatorParams(TableName.valueOf(table.getPhysicalName().getBytes()))
+                .writeBufferSize(writeBufferSize);
+        try {
+            return getHBaseConnection().getBufferedMutator(params);
+        }
+        catch (IOException | SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    public Configuration getHBaseConfiguration()
+    {
+        try {
+            return getHBaseConnection().getConfiguration();
+        }
+        catch (IOException | SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    /**
+     * Returns a new directory under the bulk load staging directory for the HFiles of a write of the query.
+     * The directory is created by the first page sink writing to it.
+     */
+    public String createBulkLoadDirectory(String queryId)
+    {
+        String root = bulkLoadStagingDirectory.orElseGet(() -> getHBaseConfiguration().get(HConstants.TEMPORARY_FS_DIRECTORY_KEY));
+        return new Path(root, "presto-phoenix-" + queryId + "-" + randomUUID()).toString();
+    }
+
+    /**
+     * Loads the HFiles the page sinks wrote for the output handle into its table, and removes the directory.
+     * Each region loads its files atomically, and files spanning a region that split meanwhile are split first.
+     */
+    public void bulkLoad(PhoenixOutputTableHandle handle)
+    {
+        Path directory = new Path(handle.getBulkLoadDirectory().get());
+        try {
+            Connection connection = getHBaseConnection();
+            if (!directory.getFileSystem(connection.getConfiguration()).exists(directory)) {
+                // no rows were written
+                return;
+            }
+            TableName tableName = TableName.valueOf(getPTable(handle).getPhysicalName().getBytes());
+            try (Admin hbaseAdmin = connection.getAdmin();
+                    Table table = connection.getTable(tableName);
+                    RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+                new LoadIncrementalHFiles(connection.getConfiguration()).doBulkLoad(directory, hbaseAdmin, table, regionLocator);
+            }
+        }
+        catch (Exception e) {
+            throwIfUnchecked(e);
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        finally {
+            deleteBulkLoadDirectory(handle);
+        }
+    }
+
+    public void deleteBulkLoadDirectory(PhoenixOutputTableHandle handle)
+    {
+        Path directory = new Path(handle.getBulkLoadDirectory().get());
+        try {
+            directory.getFileSystem(getHBaseConfiguration()).delete(directory, true);
+        }
+        catch (IOException | PrestoException e) {
+            log.warn(e, "Failed to delete bulk load directory %s", directory);
+        }
+    }
+
+    /**
+     * Disables the WAL of the table and the maintenance of its active indexes, so that writes only go
+     * to the memstores of the table. {@link #finishFastLoad} makes the written rows durable and
+     * restores the table, and has to run whether the load succeeds or not.
+     *
+     * @param asyncIndexRebuild whether the indexes are only marked for a rebuild by the Phoenix IndexTool
+     * when the load finishes, instead of being rebuilt before it finishes
+     */
+    public PhoenixFastLoad beginFastLoad(PhoenixTableHandle handle, boolean asyncIndexRebuild)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            PTable table = getPTable(connection, handle);
+            String tableName = SchemaUtil.getEscapedFullTableName(table.getName().getString());
+            List<String> activeIndexes = table.getIndexes().stream()
+                    .filter(index -> index.getIndexState() == PIndexState.ACTIVE)
+                    .map(index -> index.getTableName().getString())
+                    .collect(toImmutableList());
+
+            PhoenixFastLoad fastLoad = new PhoenixFastLoad(handle, table.isWALDisabled(), activeIndexes, asyncIndexRebuild);
+            try {
+                if (!table.isWALDisabled()) {
+                    execute(connection, "ALTER TABLE " + tableName + " SET " + TableProperty.DISABLE_WAL + "=true");
+                }
+                for (String index : activeIndexes) {
+                    execute(connection, "ALTER INDEX " + SchemaUtil.getEscapedArgument(index) + " ON " + tableName + " DISABLE");
+                }
+            }
+            catch (SQLException | RuntimeException e) {
+                try {
+                    finishFastLoad(fastLoad);
+                }
+                catch (RuntimeException restoreFailure) {
+                    e.addSuppressed(restoreFailure);
+                }
+                throw e;
+            }
+            return fastLoad;
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        finally {
+            metadataCache.invalidateTable(handle.getSchemaTableName());
+            connectionPool.invalidateAll();
+        }
+    }
+
+    /**
+     * Flushes the memstores of the table, restores its WAL setting and rebuilds the indexes the fast
+     * load disabled. The rebuild runs synchronously unless the load asked for an asynchronous one, which
+     * leaves the indexes unused until an IndexTool job has rebuilt them.
+     */
+    public void finishFastLoad(PhoenixFastLoad fastLoad)
+    {
+        PhoenixTableHandle handle = fastLoad.getTable();
+        try (PhoenixConnectionLease lease = leaseConnection(); HBaseAdmin admin = lease.getConnection().getQueryServices().getAdmin()) {
+            PhoenixConnection connection = lease.getConnection();
+            PTable table = getPTable(connection, handle);
+            String tableName = SchemaUtil.getEscapedFullTableName(table.getName().getString());
+
+            // rows written without the WAL are only durable once they are in store files
+            admin.flush(TableName.valueOf(table.getPhysicalName().getString()));
+            if (!fastLoad.isWalDisabled()) {
+                execute(connection, "ALTER TABLE " + tableName + " SET " + TableProperty.DISABLE_WAL + "=false");
+            }
+            // ASYNC only marks the indexes for the IndexTool, the default rebuilds them from a full scan of the table
+            String rebuild = fastLoad.isAsyncIndexRebuild() ? " REBUILD ASYNC" : " REBUILD";
+            for (String index : fastLoad.getDisabledIndexes()) {
+                execute(connection, "ALTER INDEX " + SchemaUtil.getEscapedArgument(index) + " ON " + tableName + rebuild);
+            }
+        }
+        catch (IOException | SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, String.format("Failed to restore table %s after fast load", handle.getSchemaTableName()), e);
+        }
+        finally {
+            metadataCache.invalidateTable(handle.getSchemaTableName());
+            connectionPool.invalidateAll();
+        }
+    }
+
+    private synchronized Connection getHBaseConnection()
+            throws IOException, SQLException
+    {
+        if (hbaseConnection == null || hbaseConnection.isClosed()) {
+            try (PhoenixConnectionLease lease = leaseConnection()) {
+                hbaseConnection = ConnectionFactory.createConnection(lease.getConnection().getQueryServices().getConfiguration());
+            }
+        }
+        return hbaseConnection;
+    }
+
+    private synchronized void closeHBaseConnection()
+    {
+        if (hbaseConnection != null) {
+            try {
+                hbaseConnection.close();
+            }
+            catch (IOException e) {
+                log.warn(e, "Failed to close HBase connection");
+            }
+            hbaseConnection = null;
+        }
+    }
+
+    /**
+     * Deletes the rows matching the tuple domain of the layout with a Phoenix DELETE, and returns their number.
+     * With auto commit on, Phoenix deletes the rows on the region servers in parallel, unless it has to
+     * maintain indexes of the table, in which case it deletes them from the client.
+     */
+    public long deleteRows(PhoenixTableLayoutHandle layoutHandle)
+    {
+        if (layoutHandle.getTupleDomain().isNone()) {
+            return 0;
+        }
+        PhoenixTableHandle handle = layoutHandle.getTable();
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            connection.setAutoCommit(true);
+            try (PreparedStatement statement = new QueryBuilder().buildDeleteStatement(
+                    connection,
+                    handle.getCatalogName(),
+                    handle.getSchemaTableName().getSchemaName(),
+                    TableUtils.normalizeTableName(handle.getSchemaTableName().getTableName()),
+                    layoutHandle.getTupleDomain())) {
+                return statement.executeUpdate();
+            }
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    public List<PhoenixSplit> getSplits(PhoenixTableLayoutHandle layoutHandle)
     {
         PhoenixTableHandle handle = layoutHandle.getTable();
         SchemaTableName schemaTableName = handle.getSchemaTableName();
         String schemaName = schemaTableName.getSchemaName();
         String tableName = schemaTableName.getTableName();
 
-        try (PhoenixConnection connection = getConnection()) {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            if (isQueryTable(tableName)) {
+                return getQueryTableSplits(connection, handle);
+            }
+
+            Optional<List<PhoenixSplit>> pointLookupSplits = getPointLookupSplits(connection, layoutHandle);
+            if (pointLookupSplits.isPresent()) {
+                return pointLookupSplits.get();
+            }
+
             final QueryPlan queryPlan = getQueryPlan(connection,
                     handle.getCatalogName(),
                     schemaName,
@@ -301,17 +784,13 @@ public class PhoenixClient
             }
 
             byte[] hbaseTableName = queryPlan.getTableRef().getTable().getPhysicalName().getBytes();
-            return new FixedSplitSource(splits.stream().map(split -> (KeyRange) split).map(split -> {
+            // the plan may read an index table, workers validate against the data table
+            long tableTimestamp = getPTable(connection, handle).getTimeStamp();
+            return splits.stream().map(split -> {
                 List<HostAddress> addresses;
                 try {
                     HRegionLocation location = connection.getQueryServices().getTableRegionLocation(hbaseTableName, split.getLowerRange());
-                    String hostName = location.getHostname();
-                    HostAddress address = hostCache.get(hostName);
-                    if (address == null) {
-                        address = HostAddress.fromString(hostName);
-                        hostCache.put(hostName, address);
-                    }
-                    addresses = ImmutableList.of(address);
+                    addresses = ImmutableList.of(getHostAddress(location));
                 }
                 catch (SQLException e) {
                     addresses = ImmutableList.of();
@@ -324,25 +803,267 @@ public class PhoenixClient
                         schemaTableName.getTableName(),
                         layoutHandle.getTupleDomain(),
                         split,
-                        addresses);
-            }).collect(Collectors.toList()));
+                        addresses,
+                        ImmutableList.of(),
+                        tableTimestamp);
+            }).collect(Collectors.toList());
         }
         catch (SQLException e) {
             throw new PrestoException(PHOENIX_ERROR, e);
         }
     }
 
-    public PhoenixResultSet getResultSet(PhoenixSplit split, List<PhoenixColumnHandle> columns) throws SQLException
+    /**
+     * When the predicate fixes every primary key column to a small set of discrete values, the
+     * rows to read are known up front. Such keys are grouped by region (and salt bucket) into
+     * point lookup splits without going through the Phoenix scan planner.
+     */
+    private Optional<List<PhoenixSplit>> getPointLookupSplits(PhoenixConnection connection, PhoenixTableLayoutHandle layoutHandle)
+            throws SQLException
+    {
+        TupleDomain<ColumnHandle> tupleDomain = layoutHandle.getTupleDomain();
+        if (!tupleDomain.getDomains().isPresent() || tupleDomain.getDomains().get().isEmpty()) {
+            return Optional.empty();
+        }
+        Map<ColumnHandle, Domain> domains = tupleDomain.getDomains().get();
+        Map<String, PhoenixColumnHandle> domainColumns = domains.keySet().stream()
+                .map(PhoenixColumnHandle.class::cast)
+                .collect(Collectors.toMap(PhoenixColumnHandle::getColumnName, identity()));
+
+        PhoenixTableHandle handle = layoutHandle.getTable();
+        PTable table = getPTable(connection, handle);
+
+        List<PhoenixColumnHandle> keyColumns = new ArrayList<>();
+        List<List<Object>> keyColumnValues = new ArrayList<>();
+        long keyCount = 1;
+        for (PColumn pkColumn : TableUtils.getPrimaryKeyColumns(table)) {
+            PhoenixColumnHandle column = domainColumns.get(pkColumn.getName().getString());
+            // the encoded key picks the region and salt bucket, so it must match what Phoenix stores exactly
+            if (column == null || !QueryBuilder.isExactlyBoundType(column.getColumnType())) {
+                return Optional.empty();
+            }
+            Domain domain = domains.get(column);
+            if (domain.isNullAllowed() || !domain.getValues().getRanges().getOrderedRanges().stream().allMatch(Range::isSingleValue)) {
+                return Optional.empty();
+            }
+            keyCount *= domain.getValues().getRanges().getRangeCount();
+            if (keyCount > MAX_POINT_LOOKUP_KEYS) {
+                return Optional.empty();
+            }
+            keyColumns.add(column);
+            keyColumnValues.add(domain.getValues().getRanges().getOrderedRanges().stream()
+                    .map(Range::getSingleValue)
+                    .collect(Collectors.toList()));
+        }
+        if (keyColumns.isEmpty()) {
+            return Optional.empty();
+        }
+
+        RowKeyEncoder rowKeyEncoder = RowKeyEncoder.create(table);
+        byte[] hbaseTableName = table.getPhysicalName().getBytes();
+        Map<String, HRegionLocation> regions = new HashMap<>();
+        Map<String, SortedMap<byte[], List<Object>>> regionKeys = new HashMap<>();
+        for (List<Object> key : Lists.cartesianProduct(keyColumnValues)) {
+            Object[] phoenixValues = new Object[keyColumns.size()];
+            for (int i = 0; i < keyColumns.size(); i++) {
+                phoenixValues[i] = toPhoenixObject(keyColumns.get(i).getColumnType(), key.get(i));
+            }
+            byte[] rowKey = rowKeyEncoder.encode(phoenixValues);
+            HRegionLocation location = connection.getQueryServices().getTableRegionLocation(hbaseTableName, rowKey);
+            // a split must not span salt buckets, as splits are assigned to buckets by their first key
+            String group = location.getRegionInfo().getEncodedName() + "/" + RowKeyEncoder.getSaltBucket(rowKey);
+            regions.put(group, location);
+            regionKeys.computeIfAbsent(group, ignored -> new TreeMap<>(Bytes.BYTES_COMPARATOR)).put(rowKey, key);
+        }
+
+        Set<ColumnHandle> keyColumnSet = ImmutableSet.copyOf(keyColumns);
+        TupleDomain<ColumnHandle> remainingDomain = TupleDomain.withColumnDomains(domains.entrySet().stream()
+                .filter(entry -> !keyColumnSet.contains(entry.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+
+        ImmutableList.Builder<PhoenixSplit> splits = ImmutableList.builder();
+        for (Map.Entry<String, SortedMap<byte[], List<Object>>> entry : regionKeys.entrySet()) {
+            SortedMap<byte[], List<Object>> keys = entry.getValue();
+            ImmutableList.Builder<TupleDomain<ColumnHandle>> lookupKeys = ImmutableList.builder();
+            for (List<Object> key : keys.values()) {
+                ImmutableMap.Builder<ColumnHandle, NullableValue> values = ImmutableMap.builder();
+                for (int i = 0; i < keyColumns.size(); i++) {
+                    values.put(keyColumns.get(i), NullableValue.of(keyColumns.get(i).getColumnType(), key.get(i)));
+                }
+                lookupKeys.add(TupleDomain.fromFixedValues(values.build()));
+            }
+            splits.add(new PhoenixSplit(
+                    connectorId,
+                    handle.getCatalogName(),
+                    handle.getSchemaTableName().getSchemaName(),
+                    handle.getSchemaTableName().getTableName(),
+                    remainingDomain,
+                    KeyRange.getKeyRange(keys.firstKey(), true, keys.lastKey(), true),
+                    ImmutableList.of(getHostAddress(regions.get(entry.getKey()))),
+                    lookupKeys.build(),
+                    table.getTimeStamp()));
+        }
+        return Optional.of(splits.build());
+    }
+
+    /**
+     * Plain scans of a query table are split per scan like regular tables. Any other plan
+     * (aggregation, ordering, limits, joins) merges partial results on the client, so it runs
+     * as a single split executing the whole query.
+     */
+    private List<PhoenixSplit> getQueryTableSplits(PhoenixConnection connection, PhoenixTableHandle handle)
+            throws SQLException
+    {
+        QueryPlan queryPlan = getQueryTablePlan(connection, handle.getTableName());
+        if (!(queryPlan instanceof ScanPlan) || !queryPlan.getOrderBy().getOrderByExpressions().isEmpty() || queryPlan.getLimit() != null) {
+            return ImmutableList.of(new PhoenixSplit(
+                    connectorId,
+                    handle.getCatalogName(),
+                    handle.getSchemaName(),
+                    handle.getTableName(),
+                    TupleDomain.all(),
+                    KeyRange.EVERYTHING_RANGE,
+                    ImmutableList.of(),
+                    ImmutableList.of(),
+                    UNKNOWN_TABLE_TIMESTAMP));
+        }
+
+        byte[] physicalName = queryPlan.getTableRef().getTable().getPhysicalName().getBytes();
+        queryPlan.getContext().getConnection().getQueryServices().clearTableRegionCache(physicalName);
+        queryPlan.iterator(MapReduceParallelScanGrouper.getInstance());
+
+        ImmutableList.Builder<PhoenixSplit> splits = ImmutableList.builder();
+        for (List<Scan> scans : queryPlan.getScans()) {
+            for (Scan scan : scans) {
+                KeyRange split = KeyRange.getKeyRange(scan.getStartRow(), scan.getStopRow());
+                List<HostAddress> addresses;
+                try {
+                    addresses = ImmutableList.of(getHostAddress(connection.getQueryServices().getTableRegionLocation(physicalName, split.getLowerRange())));
+                }
+                catch (SQLException e) {
+                    addresses = ImmutableList.of();
+                }
+                splits.add(new PhoenixSplit(
+                        connectorId,
+                        handle.getCatalogName(),
+                        handle.getSchemaName(),
+                        handle.getTableName(),
+                        TupleDomain.all(),
+                        split,
+                        addresses,
+                        ImmutableList.of(),
+                        UNKNOWN_TABLE_TIMESTAMP));
+            }
+        }
+        return splits.build();
+    }
+
+    private List<PhoenixColumnHandle> getQueryTableColumns(PhoenixConnection connection, String tableName)
+            throws SQLException
+    {
+        ImmutableList.Builder<PhoenixColumnHandle> columns = ImmutableList.builder();
+        Set<String> columnNames = new HashSet<>();
+        for (ColumnProjector projector : getQueryTablePlan(connection, tableName).getProjector().getColumnProjectors()) {
+            Type columnType = toPrestoType(projector.getExpression());
+            if (columnType == null) {
+                throw new PrestoException(NOT_SUPPORTED, "Unsupported type of query table column: " + projector.getName());
+            }
+            if (!columnNames.add(projector.getName().toLowerCase(ENGLISH))) {
+                throw new PrestoException(NOT_SUPPORTED, "Duplicate query table column name, use distinct aliases: " + projector.getName());
+            }
+            columns.add(new PhoenixColumnHandle(connectorId, projector.getName(), columnType));
+        }
+        return columns.build();
+    }
+
+    private static QueryPlan getQueryTablePlan(PhoenixConnection connection, String tableName)
+            throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            return statement.unwrap(PhoenixStatement.class).optimizeQuery(getQueryTableSql(tableName));
+        }
+    }
+
+    private HostAddress getHostAddress(HRegionLocation location)
+    {
+        String hostName = location.getHostname();
+        HostAddress address = hostCache.get(hostName);
+        if (address == null) {
+            address = HostAddress.fromString(hostName);
+            hostCache.put(hostName, address);
+        }
+        return address;
+    }
+
+    /**
+     * Point lookup splits and the single split of a query table that cannot be split by scan
+     * are read by executing a statement instead of scanning a key range.
+     */
+    public boolean isStatementSplit(PhoenixSplit split)
+    {
+        return split.isPointLookup() || (isQueryTable(split.getTableName()) && split.getKeyRange().equals(KeyRange.EVERYTHING_RANGE));
+    }
+
+    /**
+     * Reads a split for which {@link #isStatementSplit} holds. The returned result set closes
+     * its statement when it is closed, the caller owns the connection.
+     */
+    public PhoenixResultSet getStatementResultSet(PhoenixConnection connection, PhoenixSplit split, List<PhoenixColumnHandle> columns)
+            throws SQLException
+    {
+        checkArgument(isStatementSplit(split), "split is not read with a statement: %s", split);
+
+        if (!split.isPointLookup()) {
+            PhoenixStatement statement = connection.createStatement().unwrap(PhoenixStatement.class);
+            statement.closeOnCompletion();
+            return statement.executeQuery(getQueryTableSql(split.getTableName())).unwrap(PhoenixResultSet.class);
+        }
+
+        List<PhoenixColumnHandle> lookupColumns = split.getLookupKeys().get(0).getDomains().get().keySet().stream()
+                .map(PhoenixColumnHandle.class::cast)
+                .collect(Collectors.toList());
+        List<List<Object>> lookupKeys = split.getLookupKeys().stream()
+                .map(key -> {
+                    Map<ColumnHandle, NullableValue> values = TupleDomain.extractFixedValues(key).get();
+                    return lookupColumns.stream()
+                            .map(column -> values.get(column).getValue())
+                            .collect(Collectors.toList());
+                })
+                .collect(Collectors.toList());
+
+        return executeLookup(
+                connection,
+                split.getCatalogName(),
+                split.getSchemaName(),
+                split.getTableName(),
+                false,
+                columns,
+                split.getTupleDomain(),
+                lookupColumns,
+                lookupKeys);
+    }
+
+    /**
+     * Reads a split scanning a key range. The scans keep using the connection, the caller
+     * owns it until the result set is closed.
+     */
+    public PhoenixResultSet getResultSet(PhoenixConnection connection, PhoenixSplit split, List<PhoenixColumnHandle> columns) throws SQLException
     {
         List<Scan> inputSplitScans = null;
         QueryPlan queryPlan = null;
-        try (PhoenixConnection connection = getConnection()) {
-            queryPlan = getQueryPlan(connection,
-                    split.getCatalogName(),
-                    split.getSchemaName(),
-                    split.getTableName(),
-                    split.getTupleDomain(),
-                    columns);
+        try {
+            if (isQueryTable(split.getTableName())) {
+                queryPlan = getQueryTablePlan(connection, split.getTableName());
+                queryPlan.iterator(MapReduceParallelScanGrouper.getInstance());
+            }
+            else {
+                queryPlan = getQueryPlan(connection,
+                        split.getCatalogName(),
+                        split.getSchemaName(),
+                        split.getTableName(),
+                        split.getTupleDomain(),
+                        columns);
+            }
             for (List<Scan> scans : queryPlan.getScans()) {
                 for (Scan scan : scans) {
                     if (KeyRange.getKeyRange(scan.getStartRow(), scan.getStopRow()).equals(split.getKeyRange())) {
@@ -386,34 +1107,144 @@ public class PhoenixClient
                 queryPlan.getContext());
     }
 
-    public PhoenixConnection getConnection()
+    private PhoenixConnection openConnection()
             throws SQLException
     {
-        PhoenixConnection phxConn = driver.connect(connectionUrl, connectionProperties).unwrap(PhoenixConnection.class);
-        // purge MetaDataCache except for system tables
-        phxConn.getMetaDataCache().pruneTables(new PMetaData.Pruner()
-        {
-            @Override
-            public boolean prune(PTable table)
-            {
-                return table.getType() != PTableType.SYSTEM;
-            }
+        return driver.connect(connectionUrl, connectionProperties).unwrap(PhoenixConnection.class);
+    }
+
+    /**
+     * Leases a pooled connection. Closing the lease returns the connection to the pool.
+     */
+    public PhoenixConnectionLease leaseConnection()
+            throws SQLException
+    {
+        return connectionPool.lease();
+    }
+
+    /**
+     * Leases a connection for work the coordinator planned against the given version of a table.
+     * The PTable cache is shared by all connections of this node, so a cached copy is only evicted
+     * when its timestamp differs from the planned one, e.g. after the table was altered or dropped
+     * and created again. Otherwise the cached copy is used as is for the lease, so no SYSTEM.CATALOG
+     * round trip is needed to run the work, whatever the UPDATE_CACHE_FREQUENCY of the table.
+     */
+    public PhoenixConnectionLease leaseConnection(String schemaName, String tableName, long tableTimestamp)
+            throws SQLException
+    {
+        PhoenixConnectionLease lease = leaseConnection();
+        if (tableTimestamp == UNKNOWN_TABLE_TIMESTAMP) {
+            return lease;
+        }
+        try {
+            PhoenixConnection connection = lease.getConnection();
+            useCachedTable(lease, getPhoenixFullTableName(schemaName, tableName, connection.getMetaData().storesUpperCaseIdentifiers()), tableTimestamp);
+        }
+        catch (SQLException | RuntimeException e) {
+            lease.invalidate();
+            lease.close();
+            throw e;
+        }
+        return lease;
+    }
+
+    @Managed
+    @Nested
+    public PhoenixConnectionPool getConnectionPool()
+    {
+        return connectionPool;
+    }
+
+    private static void useCachedTable(PhoenixConnectionLease lease, String fullTableName, long tableTimestamp)
+            throws SQLException
+    {
+        PhoenixConnection connection = lease.getConnection();
+        PTableRef tableRef;
+        try {
+            tableRef = connection.getMetaDataCache().getTableRef(new PTableKey(connection.getTenantId(), fullTableName));
+        }
+        catch (org.apache.phoenix.schema.TableNotFoundException e) {
+            // not cached yet, it is resolved from SYSTEM.CATALOG on first use
+            return;
+        }
+        PTable cachedTable = tableRef.getTable();
+        if (cachedTable.getTimeStamp() != tableTimestamp) {
+            log.debug("Evicting cached metadata of %s, timestamp %s does not match %s", fullTableName, cachedTable.getTimeStamp(), tableTimestamp);
+            String parentName = cachedTable.getParentName() == null ? null : cachedTable.getParentName().getString();
+            connection.removeTable(connection.getTenantId(), fullTableName, parentName, cachedTable.getTimeStamp());
+            return;
+        }
+        if (connection.getSCN() != null || cachedTable.isTransactional()) {
+            // such statements resolve tables as of another timestamp than the latest one
+            return;
+        }
 
-            @Override
-            public boolean prune(PFunction function)
-            {
-                return false;
+        // Phoenix skips the SYSTEM.CATALOG lookup of a table already resolved as of the latest
+        // timestamp. Only the cache of this connection is changed, and only while it is leased.
+        long resolvedTimestamp = tableRef.getResolvedTimeStamp();
+        connection.getMetaDataCache().addTable(cachedTable, HConstants.LATEST_TIMESTAMP);
+        lease.addReleaseAction(() -> {
+            try {
+                connection.getMetaDataCache().addTable(cachedTable, resolvedTimestamp);
+            }
+            catch (SQLException e) {
+                throw new PrestoException(PHOENIX_ERROR, e);
             }
         });
-        return phxConn;
     }
 
-    private QueryPlan getQueryPlan(PhoenixConnection connection,
+    /**
+     * Runs an index lookup for the given keys. The returned result set closes its statement
+     * when it is closed, the caller owns the connection.
+     */
+    public PhoenixResultSet getLookupResultSet(
+            PhoenixConnection connection,
+            PhoenixIndexHandle indexHandle,
+            List<PhoenixColumnHandle> lookupColumns,
+            List<PhoenixColumnHandle> columns,
+            List<List<Object>> lookupKeys)
+            throws SQLException
+    {
+        PhoenixTableHandle handle = indexHandle.getTableHandle();
+        return executeLookup(
+                connection,
+                handle.getCatalogName(),
+                handle.getSchemaTableName().getSchemaName(),
+                handle.getSchemaTableName().getTableName(),
+                indexHandle.isUseIndexes(),
+                columns,
+                indexHandle.getTupleDomain(),
+                lookupColumns,
+                lookupKeys);
+    }
+
+    private PhoenixResultSet executeLookup(
+            PhoenixConnection connection,
             String catalogName,
             String schemaName,
             String tableName,
+            boolean useIndexes,
+            List<PhoenixColumnHandle> columns,
             TupleDomain<ColumnHandle> tupleDomain,
-            List<PhoenixColumnHandle> columnHandles)
+            List<PhoenixColumnHandle> lookupColumns,
+            List<List<Object>> lookupKeys)
+            throws SQLException
+    {
+        PhoenixPreparedStatement statement = new QueryBuilder().buildLookupStatement(
+                connection,
+                catalogName,
+                schemaName,
+                getPhoenixTableName(tableName),
+                useIndexes,
+                columns,
+                tupleDomain,
+                lookupColumns,
+                lookupKeys);
+        statement.closeOnCompletion();
+        return statement.executeQuery().unwrap(PhoenixResultSet.class);
+    }
+
+    private String getPhoenixTableName(String tableName)
     {
         String phoenixTableName = TableUtils.normalizeTableName(tableName);
         List<PhoenixColumnHandle> dynamicColumnHandlers = getDynamicColumns(tableName);
@@ -421,13 +1252,22 @@ public class PhoenixClient
             List<String> dynamicColumns = dynamicColumnHandlers.stream().map(column -> new StringBuilder(column.getColumnName()).append(" ").append(toSqlType(column.getColumnType())).toString()).collect(Collectors.toList());
             phoenixTableName += "(" + Joiner.on(',').join(dynamicColumns) + ")";
         }
+        return phoenixTableName;
+    }
 
+    private QueryPlan getQueryPlan(PhoenixConnection connection,
+            String catalogName,
+            String schemaName,
+            String tableName,
+            TupleDomain<ColumnHandle> tupleDomain,
+            List<PhoenixColumnHandle> columnHandles)
+    {
         try (Statement statement = connection.createStatement()) {
             String inputQuery = new QueryBuilder().buildSql(
                     connection,
                     catalogName,
                     schemaName,
-                    phoenixTableName,
+                    getPhoenixTableName(tableName),
                     columnHandles,
                     tupleDomain);
 
@@ -465,7 +1305,19 @@ public class PhoenixClient
             tableColumns.addFirst(new ColumnMetadata(ROWKEY, VARCHAR));
         }
 
-        try (PhoenixConnection connection = getConnection()) {
+        Optional<Integer> presplitRegions = PhoenixTableProperties.getPresplitRegions(tableProperties);
+        if (presplitRegions.isPresent()) {
+            // the distribution of user keys is unknown before the rows are written, unlike that of generated keys
+            if (!pkColumns.isEmpty()) {
+                throw new PrestoException(INVALID_TABLE_PROPERTY, PhoenixTableProperties.PRESPLIT_REGIONS + " requires a generated row key, use split_on or salt_buckets with rowkeys");
+            }
+            if (PhoenixTableProperties.getSaltBuckets(tableProperties).isPresent() || PhoenixTableProperties.getSplitOn(tableProperties).isPresent()) {
+                throw new PrestoException(INVALID_TABLE_PROPERTY, PhoenixTableProperties.PRESPLIT_REGIONS + " cannot be combined with split_on or salt_buckets");
+            }
+        }
+
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
             boolean uppercase = connection.getMetaData().storesUpperCaseIdentifiers();
             String catalog = connection.getCatalog();
 
@@ -510,7 +1362,6 @@ public class PhoenixClient
 
             ImmutableList.Builder<String> talbeOptions = ImmutableList.builder();
             PhoenixTableProperties.getSaltBuckets(tableProperties).ifPresent(value -> talbeOptions.add(TableProperty.SALT_BUCKETS + "=" + value));
-            PhoenixTableProperties.getSplitOn(tableProperties).ifPresent(value -> talbeOptions.add("SPLIT ON (" + value.replace('"', '\'') + ")"));
             PhoenixTableProperties.getDisableWal(tableProperties).ifPresent(value -> talbeOptions.add(TableProperty.DISABLE_WAL + "=" + value));
             PhoenixTableProperties.getImmutableRows(tableProperties).ifPresent(value -> talbeOptions.add(TableProperty.IMMUTABLE_ROWS + "=" + value));
             PhoenixTableProperties.getDefaultColumnFamily(tableProperties).ifPresent(value -> talbeOptions.add(TableProperty.DEFAULT_COLUMN_FAMILY + "=" + value));
@@ -523,8 +1374,15 @@ public class PhoenixClient
             PhoenixTableProperties.getDataBlockEncoding(tableProperties).ifPresent(value -> talbeOptions.add(HColumnDescriptor.DATA_BLOCK_ENCODING + "='" + value + "'"));
             PhoenixTableProperties.getTimeToLive(tableProperties).ifPresent(value -> talbeOptions.add(HColumnDescriptor.TTL + "=" + value));
             Joiner.on(", \n ").appendTo(sql, talbeOptions.build());
+            // SPLIT ON follows the properties, without a separating comma
+            PhoenixTableProperties.getSplitOn(tableProperties).ifPresent(value -> sql.append("\n SPLIT ON (").append(value.replace('"', '\'')).append(")"));
+            presplitRegions.map(rowkeyGenerator::getSplitPoints)
+                    .filter(splitPoints -> !splitPoints.isEmpty())
+                    .ifPresent(splitPoints -> sql.append(splitPoints.stream().collect(Collectors.joining("', '", "\n SPLIT ON ('", "')"))));
 
             execute(connection, sql.toString());
+            metadataCache.invalidateTable(schemaTableName);
+            connectionPool.invalidateAll();
 
             return new PhoenixOutputTableHandle(
                     connectorId,
@@ -532,22 +1390,31 @@ public class PhoenixClient
                     schema,
                     table,
                     columnNames.build(),
-                    columnTypes.build());
+                    columnTypes.build(),
+                    getTable(connection, getPhoenixFullTableName(schema, table, uppercase)).getTimeStamp(),
+                    Optional.empty(),
+                    OptionalLong.empty());
         }
         catch (SQLException e) {
             throw new PrestoException(PHOENIX_ERROR, e);
         }
     }
 
-    public PhoenixOutputTableHandle beginInsertTable(ConnectorTableMetadata tableMetadata)
+    public PhoenixOutputTableHandle beginInsertTable(PhoenixTableHandle handle)
     {
+        List<ColumnMetadata> columns = getColumns(handle, true).stream()
+                .map(PhoenixColumnHandle::getColumnMetadata)
+                .collect(Collectors.toList());
         return new PhoenixOutputTableHandle(
                 connectorId,
                 "",
-                tableMetadata.getTable().getSchemaName(),
-                tableMetadata.getTable().getTableName(),
-                tableMetadata.getColumns().stream().map(ColumnMetadata::getName).collect(Collectors.toList()),
-                tableMetadata.getColumns().stream().map(ColumnMetadata::getType).collect(Collectors.toList()));
+                handle.getSchemaName(),
+                handle.getTableName(),
+                columns.stream().map(ColumnMetadata::getName).collect(Collectors.toList()),
+                columns.stream().map(ColumnMetadata::getType).collect(Collectors.toList()),
+                getPTable(handle).getTimeStamp(),
+                Optional.empty(),
+                OptionalLong.empty());
     }
 
     public void dropTable(PhoenixTableHandle handle)
@@ -556,12 +1423,17 @@ public class PhoenixClient
                 .append("DROP TABLE ")
                 .append(getFullTableName(handle.getCatalogName(), handle.getSchemaName(), handle.getTableName()));
 
-        try (PhoenixConnection connection = getConnection()) {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
             execute(connection, sql.toString());
         }
         catch (SQLException e) {
             throw new PrestoException(PHOENIX_ERROR, e);
         }
+        finally {
+            metadataCache.invalidateTable(handle.getSchemaTableName());
+            connectionPool.invalidateAll();
+        }
     }
 
     public void addColumn(PhoenixTableHandle handle, ColumnMetadata column)
@@ -571,12 +1443,17 @@ public class PhoenixClient
                 .append(getFullTableName(handle.getCatalogName(), handle.getSchemaName(), handle.getTableName()))
                 .append(" ADD ").append(column.getName()).append(" ").append(toSqlType(column.getType()));
 
-        try (PhoenixConnection connection = getConnection()) {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
             execute(connection, sql.toString());
         }
         catch (SQLException e) {
             throw new PrestoException(PHOENIX_ERROR, e);
         }
+        finally {
+            metadataCache.invalidateTable(handle.getSchemaTableName());
+            connectionPool.invalidateAll();
+        }
     }
 
     public void dropColumn(PhoenixTableHandle handle, PhoenixColumnHandle columnHandle)
@@ -586,17 +1463,23 @@ public class PhoenixClient
                 .append(getFullTableName(handle.getCatalogName(), handle.getSchemaName(), handle.getTableName()))
                 .append(" DROP COLUMN ").append(columnHandle.getColumnName());
 
-        try (PhoenixConnection connection = getConnection()) {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
             execute(connection, sql.toString());
         }
         catch (SQLException e) {
             throw new PrestoException(PHOENIX_ERROR, e);
         }
+        finally {
+            metadataCache.invalidateTable(handle.getSchemaTableName());
+            connectionPool.invalidateAll();
+        }
     }
 
     public void createSnapshotTable(ConnectorSession session, PhoenixOutputTableHandle handle)
     {
-        try (PhoenixConnection pconn = getConnection(); HBaseAdmin admin = pconn.getQueryServices().getAdmin()) {
+        try (PhoenixConnectionLease lease = leaseConnection(); HBaseAdmin admin = lease.getConnection().getQueryServices().getAdmin()) {
+            PhoenixConnection pconn = lease.getConnection();
             boolean uppercase = pconn.getMetaData().storesUpperCaseIdentifiers();
             String tableFullName = getPhoenixFullTableName(handle.getSchemaName(), handle.getTableName(), uppercase);
 
@@ -614,7 +1497,8 @@ public class PhoenixClient
 
     public void deleteSnapshotIfPresent(ConnectorSession session, PhoenixOutputTableHandle handle, boolean storeSnapshot)
     {
-        try (PhoenixConnection pconn = getConnection(); HBaseAdmin admin = pconn.getQueryServices().getAdmin()) {
+        try (PhoenixConnectionLease lease = leaseConnection(); HBaseAdmin admin = lease.getConnection().getQueryServices().getAdmin()) {
+            PhoenixConnection pconn = lease.getConnection();
             boolean uppercase = pconn.getMetaData().storesUpperCaseIdentifiers();
             String tableFullName = getPhoenixFullTableName(handle.getSchemaName(), handle.getTableName(), uppercase);
 
@@ -662,6 +1546,36 @@ public class PhoenixClient
                 resultSet.getString("TABLE_NAME").toLowerCase(ENGLISH));
     }
 
+    public void createSchema(String schemaName)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            execute(connection, "CREATE SCHEMA " + schemaName);
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        finally {
+            metadataCache.invalidateSchemas();
+            connectionPool.invalidateAll();
+        }
+    }
+
+    public void dropSchema(String schemaName)
+    {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            execute(connection, "DROP SCHEMA " + schemaName);
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        finally {
+            metadataCache.invalidateSchemas();
+            connectionPool.invalidateAll();
+        }
+    }
+
     public void execute(PhoenixConnection connection, String query)
             throws SQLException
     {
@@ -672,10 +1586,19 @@ public class PhoenixClient
     }
 
     public Map<String, Object> getTableProperties(PhoenixTableHandle handle)
+    {
+        if (isQueryTable(handle.getTableName())) {
+            return ImmutableMap.of();
+        }
+        return metadataCache.getTableProperties(handle.getSchemaTableName(), () -> loadTableProperties(handle));
+    }
+
+    private Map<String, Object> loadTableProperties(PhoenixTableHandle handle)
     {
         ImmutableMap.Builder<String, Object> properties = ImmutableMap.builder();
 
-        try (PhoenixConnection pconn = getConnection(); HBaseAdmin admin = pconn.getQueryServices().getAdmin()) {
+        try (PhoenixConnectionLease lease = leaseConnection()) {
+            PhoenixConnection pconn = lease.getConnection();
             PTable table = getTable(pconn, getPhoenixFullTableName(handle.getSchemaName(), handle.getTableName(), pconn.getMetaData().storesUpperCaseIdentifiers()));
 
             List<PColumn> pkColumns = table.getPKColumns();
@@ -721,32 +1644,8 @@ public class PhoenixClient
                 properties.put(PhoenixTableProperties.APPEND_ONLY_SCHEMA, table.isAppendOnlySchema());
             }
 
-            HTableDescriptor tableDesc = admin.getTableDescriptor(table.getPhysicalName().getBytes());
+            properties.putAll(getColumnFamilyProperties(pconn, table, defaultFamilyName));
 
-            HColumnDescriptor[] columnFamilies = tableDesc.getColumnFamilies();
-            for (HColumnDescriptor columnFamily : columnFamilies) {
-                if (columnFamily.getNameAsString().equals(defaultFamilyName)) {
-                    if (!columnFamily.getBloomFilterType().toString().equals("NONE")) {
-                        properties.put(PhoenixTableProperties.BLOOMFILTER, columnFamily.getBloomFilterType().toString());
-                    }
-                    if (columnFamily.getMaxVersions() != 1) {
-                        properties.put(PhoenixTableProperties.VERSIONS, columnFamily.getMaxVersions());
-                    }
-                    if (columnFamily.getMinVersions() > 0) {
-                        properties.put(PhoenixTableProperties.MIN_VERSIONS, columnFamily.getMinVersions());
-                    }
-                    if (!columnFamily.getCompression().toString().equals("NONE")) {
-                        properties.put(PhoenixTableProperties.COMPRESSION, columnFamily.getCompression().toString());
-                    }
-                    if (!columnFamily.getDataBlockEncoding().toString().equals("FAST_DIFF")) {
-                        properties.put(PhoenixTableProperties.DATA_BLOCK_ENCODING, columnFamily.getDataBlockEncoding().toString());
-                    }
-                    if (columnFamily.getTimeToLive() < FOREVER) {
-                        properties.put(PhoenixTableProperties.TTL, columnFamily.getTimeToLive());
-                    }
-                    break;
-                }
-            }
             List<String> options = talbeOptions.build();
             if (options.size() > 0) {
                 StringBuilder tableOptions = new StringBuilder();
@@ -759,6 +1658,76 @@ public class PhoenixClient
         return properties.build();
     }
 
+    private Map<String, Object> getColumnFamilyProperties(PhoenixConnection connection, PTable table, String familyName)
+            throws IOException, SQLException
+    {
+        Map.Entry<String, Long> key = immutableEntry(table.getPhysicalName().getString(), table.getTimeStamp());
+        Map<String, Object> cached = columnFamilyProperties.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        HTableDescriptor tableDesc = getTableDescriptor(connection, table.getPhysicalName().getBytes());
+        ImmutableMap.Builder<String, Object> properties = ImmutableMap.builder();
+        HColumnDescriptor columnFamily = tableDesc.getFamily(Bytes.toBytes(familyName));
+        if (columnFamily != null) {
+            if (!columnFamily.getBloomFilterType().toString().equals("NONE")) {
+                properties.put(PhoenixTableProperties.BLOOMFILTER, columnFamily.getBloomFilterType().toString());
+            }
+            if (columnFamily.getMaxVersions() != 1) {
+                properties.put(PhoenixTableProperties.VERSIONS, columnFamily.getMaxVersions());
+            }
+            if (columnFamily.getMinVersions() > 0) {
+                properties.put(PhoenixTableProperties.MIN_VERSIONS, columnFamily.getMinVersions());
+            }
+            if (!columnFamily.getCompression().toString().equals("NONE")) {
+                properties.put(PhoenixTableProperties.COMPRESSION, columnFamily.getCompression().toString());
+            }
+            if (!columnFamily.getDataBlockEncoding().toString().equals("FAST_DIFF")) {
+                properties.put(PhoenixTableProperties.DATA_BLOCK_ENCODING, columnFamily.getDataBlockEncoding().toString());
+            }
+            if (columnFamily.getTimeToLive() < FOREVER) {
+                properties.put(PhoenixTableProperties.TTL, columnFamily.getTimeToLive());
+            }
+        }
+        Map<String, Object> result = properties.build();
+        columnFamilyProperties.put(key, result);
+        return result;
+    }
+
+    /**
+     * Fetches a table descriptor through the admin shared by all metadata calls, so
+     * resolving table properties does not set up a new admin for every request.
+     */
+    private synchronized HTableDescriptor getTableDescriptor(PhoenixConnection connection, byte[] physicalName)
+            throws IOException, SQLException
+    {
+        if (admin == null) {
+            admin = connection.getQueryServices().getAdmin();
+        }
+        try {
+            return admin.getTableDescriptor(physicalName);
+        }
+        catch (IOException e) {
+            // the admin may be bound to a broken master connection, start over on the next call
+            closeAdmin();
+            throw e;
+        }
+    }
+
+    private synchronized void closeAdmin()
+    {
+        if (admin != null) {
+            try {
+                admin.close();
+            }
+            catch (IOException e) {
+                log.warn(e, "Failed to close HBase admin");
+            }
+            admin = null;
+        }
+    }
+
     public static String getFullTableName(String catalog, String schema, String table)
     {
         StringBuilder sb = new StringBuilder();
@@ -820,6 +1789,24 @@ public class PhoenixClient
         throw new PrestoException(NOT_SUPPORTED, "Unsupported column type: " + type.getTypeSignature());
     }
 
+    private static Type toPrestoType(Expression expression)
+    {
+        PDataType<?> dataType = expression.getDataType();
+        if (dataType == null) {
+            return null;
+        }
+        if (dataType == PDecimal.INSTANCE && expression.getMaxLength() == null) {
+            // unbounded decimals, e.g. the result of SUM, do not fit a Presto decimal type
+            return DOUBLE;
+        }
+        return toPrestoType(
+                dataType.isArrayType() ? Types.ARRAY : dataType.getSqlType(),
+                firstNonNull(expression.getMaxLength(), 0),
+                firstNonNull(expression.getScale(), 0),
+                0,
+                dataType.getSqlType());
+    }
+
     protected static Type toPrestoType(int phoenixType, int columnSize, int decimalDigits, int arraySize, int rawTypeId)
     {
         switch (phoenixType) {
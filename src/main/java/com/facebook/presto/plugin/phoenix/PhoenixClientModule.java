@@ -13,28 +13,37 @@
  */
 package com.facebook.presto.plugin.phoenix;
 
+import com.facebook.presto.spi.NodeManager;
 import com.facebook.presto.spi.type.TypeManager;
 import com.google.inject.Binder;
 import com.google.inject.Scopes;
 import io.airlift.configuration.AbstractConfigurationAwareModule;
 import org.apache.phoenix.jdbc.PhoenixDriver;
+import org.weakref.jmx.guice.MBeanModule;
+
+import javax.management.MBeanServer;
 
 import java.sql.SQLException;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static io.airlift.configuration.ConfigBinder.configBinder;
+import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
 import static java.util.Objects.requireNonNull;
+import static org.weakref.jmx.ObjectNames.generatedNameOf;
+import static org.weakref.jmx.guice.ExportBinder.newExporter;
 
 public class PhoenixClientModule
         extends AbstractConfigurationAwareModule
 {
     private final String connectorId;
     private final TypeManager typeManager;
+    private final NodeManager nodeManager;
 
-    public PhoenixClientModule(String connectorId, TypeManager typeManager)
+    public PhoenixClientModule(String connectorId, TypeManager typeManager, NodeManager nodeManager)
     {
         this.connectorId = requireNonNull(connectorId, "connector id is null");
         this.typeManager = typeManager;
+        this.nodeManager = nodeManager;
     }
 
     @Override
@@ -44,15 +53,26 @@ public class PhoenixClientModule
         binder.bind(PhoenixSplitManager.class).in(Scopes.SINGLETON);
         binder.bind(PhoenixPageSourceProvider.class).in(Scopes.SINGLETON);
         binder.bind(PhoenixPageSinkProvider.class).in(Scopes.SINGLETON);
+        binder.bind(PhoenixWriteRetryPolicy.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(PhoenixWriteRetryPolicy.class).as(generatedNameOf(PhoenixWriteRetryPolicy.class, connectorId));
+        binder.bind(PhoenixNodePartitioningProvider.class).in(Scopes.SINGLETON);
+        binder.bind(PhoenixIndexProvider.class).in(Scopes.SINGLETON);
         configBinder(binder).bindConfig(PhoenixMetadataConfig.class);
 
         binder.bind(PhoenixClient.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(PhoenixClient.class).as(generatedNameOf(PhoenixClient.class, connectorId));
+        binder.bind(PhoenixMetadataCache.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(PhoenixMetadataCache.class).as(generatedNameOf(PhoenixMetadataCache.class, connectorId));
         binder.bind(PhoenixMetadataFactory.class).in(Scopes.SINGLETON);
+        binder.bind(PhoenixStatisticsProvider.class).in(Scopes.SINGLETON);
 
         binder.bind(PhoenixSessionProperties.class).in(Scopes.SINGLETON);
         binder.bind(PhoenixTableProperties.class).in(Scopes.SINGLETON);
         binder.bind(PhoenixConnector.class).in(Scopes.SINGLETON);
         binder.bind(TypeManager.class).toInstance(typeManager);
+        binder.bind(NodeManager.class).toInstance(nodeManager);
+        binder.bind(MBeanServer.class).toInstance(new RebindSafeMBeanServer(getPlatformMBeanServer()));
+        binder.install(new MBeanModule());
 
         ensureCatalogIsEmpty(buildConfigObject(PhoenixConfig.class).getConnectionUrl());
     }
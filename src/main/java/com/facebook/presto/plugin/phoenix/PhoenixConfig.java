@@ -15,17 +15,45 @@ package com.facebook.presto.plugin.phoenix;
 
 import com.google.common.base.Splitter;
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import io.airlift.units.MinDataSize;
+import io.airlift.units.MinDuration;
 
+import javax.annotation.Nullable;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import java.util.Properties;
 
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 public class PhoenixConfig
 {
     private static final Splitter CONNECTION_PROPERTIES_SPLITTER = Splitter.on(';').trimResults().omitEmptyStrings();
 
     private Properties connectionProperties = new Properties();
     private String connectionUrl;
+    private Duration metadataCacheTtl = new Duration(1, MINUTES);
+    private long metadataCacheMaximumSize = 10_000;
+    private int metadataListingThreads = 4;
+    private int connectionPoolMaxSize = 32;
+    private Duration connectionPoolIdleTimeout = new Duration(2, MINUTES);
+    private int writeBatchSize = 1000;
+    private DataSize writeBatchMaxSize = new DataSize(4, MEGABYTE);
+    private int writeMaxInFlightBatches = 2;
+    private PhoenixWriteMode writeMode = PhoenixWriteMode.JDBC;
+    private int writeRetryMaxAttempts = 5;
+    private Duration writeRetryInitialDelay = new Duration(100, MILLISECONDS);
+    private Duration writeRetryMaxDelay = new Duration(10, SECONDS);
+    private PhoenixRowkeyGenerator rowkeyGenerator = PhoenixRowkeyGenerator.UUID;
+    private boolean rowKeyOrderedScans;
+    private String bulkLoadStagingDirectory;
+    private DataSize bulkLoadMaxBufferSize = new DataSize(128, MEGABYTE);
 
     @NotNull
     public String getConnectionUrl()
@@ -64,4 +92,233 @@ public class PhoenixConfig
         }
         return this;
     }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getMetadataCacheTtl()
+    {
+        return metadataCacheTtl;
+    }
+
+    @Config("metadata-cache-ttl")
+    @ConfigDescription("How long schema, table and column metadata is cached, 0 disables caching. DDL through this catalog invalidates the cache, DDL issued elsewhere becomes visible after this long")
+    public PhoenixConfig setMetadataCacheTtl(Duration metadataCacheTtl)
+    {
+        this.metadataCacheTtl = metadataCacheTtl;
+        return this;
+    }
+
+    @Min(1)
+    public long getMetadataCacheMaximumSize()
+    {
+        return metadataCacheMaximumSize;
+    }
+
+    @Config("metadata-cache-maximum-size")
+    @ConfigDescription("Maximum number of entries in each metadata cache")
+    public PhoenixConfig setMetadataCacheMaximumSize(long metadataCacheMaximumSize)
+    {
+        this.metadataCacheMaximumSize = metadataCacheMaximumSize;
+        return this;
+    }
+
+    @Min(1)
+    public int getMetadataListingThreads()
+    {
+        return metadataListingThreads;
+    }
+
+    @Config("metadata-listing-threads")
+    @ConfigDescription("Number of schemas whose columns are listed concurrently")
+    public PhoenixConfig setMetadataListingThreads(int metadataListingThreads)
+    {
+        this.metadataListingThreads = metadataListingThreads;
+        return this;
+    }
+
+    @Min(0)
+    public int getConnectionPoolMaxSize()
+    {
+        return connectionPoolMaxSize;
+    }
+
+    @Config("connection-pool.max-size")
+    @ConfigDescription("Maximum number of idle connections kept for reuse, 0 disables pooling")
+    public PhoenixConfig setConnectionPoolMaxSize(int connectionPoolMaxSize)
+    {
+        this.connectionPoolMaxSize = connectionPoolMaxSize;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getConnectionPoolIdleTimeout()
+    {
+        return connectionPoolIdleTimeout;
+    }
+
+    @Config("connection-pool.idle-timeout")
+    @ConfigDescription("How long an unused pooled connection is kept before it is closed")
+    public PhoenixConfig setConnectionPoolIdleTimeout(Duration connectionPoolIdleTimeout)
+    {
+        this.connectionPoolIdleTimeout = connectionPoolIdleTimeout;
+        return this;
+    }
+
+    @Min(1)
+    public int getWriteBatchSize()
+    {
+        return writeBatchSize;
+    }
+
+    @Config("write-batch-size")
+    @ConfigDescription("Maximum number of rows a page sink buffers before it sends them to Phoenix")
+    public PhoenixConfig setWriteBatchSize(int writeBatchSize)
+    {
+        this.writeBatchSize = writeBatchSize;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1kB")
+    public DataSize getWriteBatchMaxSize()
+    {
+        return writeBatchMaxSize;
+    }
+
+    @Config("write-batch-max-size")
+    @ConfigDescription("Maximum size of the rows a page sink buffers before it sends them to Phoenix")
+    public PhoenixConfig setWriteBatchMaxSize(DataSize writeBatchMaxSize)
+    {
+        this.writeBatchMaxSize = writeBatchMaxSize;
+        return this;
+    }
+
+    @Min(1)
+    public int getWriteMaxInFlightBatches()
+    {
+        return writeMaxInFlightBatches;
+    }
+
+    @Config("write-max-in-flight-batches")
+    @ConfigDescription("Maximum number of batches a page sink has committing or waiting to commit before it blocks")
+    public PhoenixConfig setWriteMaxInFlightBatches(int writeMaxInFlightBatches)
+    {
+        this.writeMaxInFlightBatches = writeMaxInFlightBatches;
+        return this;
+    }
+
+    @NotNull
+    public PhoenixWriteMode getWriteMode()
+    {
+        return writeMode;
+    }
+
+    @Config("write-mode")
+    @ConfigDescription("How rows are written to Phoenix tables: JDBC, DIRECT or BULK_LOAD")
+    public PhoenixConfig setWriteMode(PhoenixWriteMode writeMode)
+    {
+        this.writeMode = writeMode;
+        return this;
+    }
+
+    @Min(1)
+    public int getWriteRetryMaxAttempts()
+    {
+        return writeRetryMaxAttempts;
+    }
+
+    @Config("write-retry.max-attempts")
+    @ConfigDescription("Maximum number of times a page sink tries to write a batch, 1 disables retries")
+    public PhoenixConfig setWriteRetryMaxAttempts(int writeRetryMaxAttempts)
+    {
+        this.writeRetryMaxAttempts = writeRetryMaxAttempts;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getWriteRetryInitialDelay()
+    {
+        return writeRetryInitialDelay;
+    }
+
+    @Config("write-retry.initial-delay")
+    @ConfigDescription("How long a page sink waits before it retries a failed batch the first time")
+    public PhoenixConfig setWriteRetryInitialDelay(Duration writeRetryInitialDelay)
+    {
+        this.writeRetryInitialDelay = writeRetryInitialDelay;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getWriteRetryMaxDelay()
+    {
+        return writeRetryMaxDelay;
+    }
+
+    @Config("write-retry.max-delay")
+    @ConfigDescription("Maximum time a page sink waits between retries of a failed batch")
+    public PhoenixConfig setWriteRetryMaxDelay(Duration writeRetryMaxDelay)
+    {
+        this.writeRetryMaxDelay = writeRetryMaxDelay;
+        return this;
+    }
+
+    @NotNull
+    public PhoenixRowkeyGenerator getRowkeyGenerator()
+    {
+        return rowkeyGenerator;
+    }
+
+    @Config("rowkey-generator")
+    @ConfigDescription("How the ROWKEY of tables created without rowkeys is generated: UUID, RANDOM or TIME_ORDERED")
+    public PhoenixConfig setRowkeyGenerator(PhoenixRowkeyGenerator rowkeyGenerator)
+    {
+        this.rowkeyGenerator = rowkeyGenerator;
+        return this;
+    }
+
+    public boolean isRowKeyOrderedScans()
+    {
+        return rowKeyOrderedScans;
+    }
+
+    @Config("row-key-ordered-scans")
+    @ConfigDescription("Read the scans of a split in row key order, so table layouts declare the primary key sort order. Disables parallel unordered scans")
+    public PhoenixConfig setRowKeyOrderedScans(boolean rowKeyOrderedScans)
+    {
+        this.rowKeyOrderedScans = rowKeyOrderedScans;
+        return this;
+    }
+
+    @Nullable
+    public String getBulkLoadStagingDirectory()
+    {
+        return bulkLoadStagingDirectory;
+    }
+
+    @Config("bulk-load.staging-directory")
+    @ConfigDescription("Directory HFiles are written to before they are loaded, defaults to hbase.fs.tmp.dir")
+    public PhoenixConfig setBulkLoadStagingDirectory(String bulkLoadStagingDirectory)
+    {
+        this.bulkLoadStagingDirectory = bulkLoadStagingDirectory;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getBulkLoadMaxBufferSize()
+    {
+        return bulkLoadMaxBufferSize;
+    }
+
+    @Config("bulk-load.max-buffer-size")
+    @ConfigDescription("Maximum size of the cells a page sink sorts in memory before it writes them to HFiles")
+    public PhoenixConfig setBulkLoadMaxBufferSize(DataSize bulkLoadMaxBufferSize)
+    {
+        this.bulkLoadMaxBufferSize = bulkLoadMaxBufferSize;
+        return this;
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import org.apache.phoenix.jdbc.PhoenixConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A connection borrowed from the {@link PhoenixConnectionPool}. Closing the lease returns the
+ * connection to the pool, so the connection itself must not be closed by the holder.
+ */
+public class PhoenixConnectionLease
+        implements AutoCloseable
+{
+    private final PhoenixConnectionPool pool;
+    private final PhoenixConnection connection;
+    private final boolean defaultAutoCommit;
+    private final long generation;
+    private final long leaseStartNanos = System.nanoTime();
+    private final List<Runnable> releaseActions = new ArrayList<>();
+
+    private boolean reusable = true;
+    private boolean closed;
+
+    PhoenixConnectionLease(PhoenixConnectionPool pool, PhoenixConnection connection, boolean defaultAutoCommit, long generation)
+    {
+        this.pool = requireNonNull(pool, "pool is null");
+        this.connection = requireNonNull(connection, "connection is null");
+        this.defaultAutoCommit = defaultAutoCommit;
+        this.generation = generation;
+    }
+
+    public PhoenixConnection getConnection()
+    {
+        return connection;
+    }
+
+    /**
+     * Closes the connection instead of returning it to the pool, for connections left in an
+     * unknown state.
+     */
+    public void invalidate()
+    {
+        reusable = false;
+    }
+
+    /**
+     * Runs the action when the lease is closed, before the connection goes back to the pool,
+     * to undo changes made to the connection for this lease only. A failing action keeps the
+     * connection from being reused.
+     */
+    void addReleaseAction(Runnable action)
+    {
+        releaseActions.add(requireNonNull(action, "action is null"));
+    }
+
+    boolean isDefaultAutoCommit()
+    {
+        return defaultAutoCommit;
+    }
+
+    long getGeneration()
+    {
+        return generation;
+    }
+
+    long getLeaseStartNanos()
+    {
+        return leaseStartNanos;
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Runnable action : releaseActions) {
+            try {
+                action.run();
+            }
+            catch (RuntimeException e) {
+                reusable = false;
+            }
+        }
+        pool.release(this, reusable);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.airlift.units.Duration;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Keeps idle Phoenix connections for reuse, so that metadata calls, splits and page sinks
+ * do not open a new connection each. Connections are handed out as {@link PhoenixConnectionLease}s
+ * and return to the pool when the lease is closed, most recently used first. A returned
+ * connection is rolled back and has its auto commit mode restored; closed connections are
+ * dropped on the way in and out, and connections idle for longer than the idle timeout are
+ * closed in the background. Only idle connections are limited, leasing never waits: leases
+ * nest, e.g. a page sink resolving metadata, so a limit on all connections could deadlock.
+ */
+@ThreadSafe
+public class PhoenixConnectionPool
+{
+    private static final Logger log = Logger.get(PhoenixConnectionPool.class);
+
+    public interface ConnectionFactory
+    {
+        PhoenixConnection openConnection()
+                throws SQLException;
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final int maxIdleConnections;
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService evictionExecutor;
+
+    @GuardedBy("this")
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+    @GuardedBy("this")
+    private long generation;
+    @GuardedBy("this")
+    private boolean closed;
+
+    private final AtomicInteger leasedConnections = new AtomicInteger();
+    private final TimeStat leaseHoldTime = new TimeStat(MILLISECONDS);
+    private final CounterStat createdConnections = new CounterStat();
+    private final CounterStat reusedConnections = new CounterStat();
+    private final CounterStat closedConnections = new CounterStat();
+
+    public PhoenixConnectionPool(ConnectionFactory connectionFactory, String name, int maxIdleConnections, Duration idleTimeout)
+    {
+        this.connectionFactory = requireNonNull(connectionFactory, "connectionFactory is null");
+        checkArgument(maxIdleConnections >= 0, "maxIdleConnections is negative");
+        this.maxIdleConnections = maxIdleConnections;
+        this.idleTimeoutNanos = requireNonNull(idleTimeout, "idleTimeout is null").roundTo(NANOSECONDS);
+        this.evictionExecutor = newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("phoenix-connection-eviction-" + name).setDaemon(true).build());
+        long evictionIntervalMillis = max(idleTimeout.toMillis() / 2, 1_000);
+        evictionExecutor.scheduleWithFixedDelay(this::evictIdleConnections, evictionIntervalMillis, evictionIntervalMillis, MILLISECONDS);
+    }
+
+    public PhoenixConnectionLease lease()
+            throws SQLException
+    {
+        IdleConnection idle;
+        long leaseGeneration;
+        while (true) {
+            synchronized (this) {
+                idle = idleConnections.pollFirst();
+                leaseGeneration = generation;
+            }
+            if (idle == null || isHealthy(idle.getConnection())) {
+                break;
+            }
+            close(idle.getConnection());
+        }
+
+        PhoenixConnection connection;
+        boolean defaultAutoCommit;
+        if (idle != null) {
+            reusedConnections.update(1);
+            connection = idle.getConnection();
+            defaultAutoCommit = idle.isDefaultAutoCommit();
+        }
+        else {
+            connection = connectionFactory.openConnection();
+            createdConnections.update(1);
+            defaultAutoCommit = connection.getAutoCommit();
+        }
+        leasedConnections.incrementAndGet();
+        return new PhoenixConnectionLease(this, connection, defaultAutoCommit, leaseGeneration);
+    }
+
+    void release(PhoenixConnectionLease lease, boolean reusable)
+    {
+        leasedConnections.decrementAndGet();
+        leaseHoldTime.add(System.nanoTime() - lease.getLeaseStartNanos(), NANOSECONDS);
+
+        PhoenixConnection connection = lease.getConnection();
+        if (reusable && maxIdleConnections > 0 && reset(connection, lease.isDefaultAutoCommit())) {
+            synchronized (this) {
+                if (!closed && lease.getGeneration() == generation && idleConnections.size() < maxIdleConnections) {
+                    idleConnections.addFirst(new IdleConnection(connection, lease.isDefaultAutoCommit(), System.nanoTime()));
+                    return;
+                }
+            }
+        }
+        close(connection);
+    }
+
+    /**
+     * Closes all idle connections and makes sure connections leased right now are not reused,
+     * e.g. after DDL changed metadata the connections may have cached.
+     */
+    public void invalidateAll()
+    {
+        List<IdleConnection> connections;
+        synchronized (this) {
+            generation++;
+            connections = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+        }
+        connections.forEach(idle -> close(idle.getConnection()));
+    }
+
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
+        }
+        evictionExecutor.shutdownNow();
+        invalidateAll();
+    }
+
+    private void evictIdleConnections()
+    {
+        long now = System.nanoTime();
+        List<IdleConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            // the least recently used connections are at the end of the deque
+            Iterator<IdleConnection> iterator = idleConnections.descendingIterator();
+            while (iterator.hasNext()) {
+                IdleConnection idle = iterator.next();
+                if (now - idle.getIdleSinceNanos() < idleTimeoutNanos) {
+                    break;
+                }
+                iterator.remove();
+                expired.add(idle);
+            }
+        }
+        expired.forEach(idle -> close(idle.getConnection()));
+    }
+
+    private static boolean isHealthy(PhoenixConnection connection)
+    {
+        try {
+            return !connection.isClosed();
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static boolean reset(PhoenixConnection connection, boolean defaultAutoCommit)
+    {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                // discard mutations of a failed or aborted write
+                connection.rollback();
+            }
+            if (connection.getAutoCommit() != defaultAutoCommit) {
+                connection.setAutoCommit(defaultAutoCommit);
+            }
+            return true;
+        }
+        catch (SQLException e) {
+            log.debug(e, "Failed to reset pooled connection");
+            return false;
+        }
+    }
+
+    private void close(PhoenixConnection connection)
+    {
+        closedConnections.update(1);
+        try {
+            connection.close();
+        }
+        catch (SQLException e) {
+            log.debug(e, "Failed to close pooled connection");
+        }
+    }
+
+    @Managed
+    public synchronized int getIdleConnections()
+    {
+        return idleConnections.size();
+    }
+
+    @Managed
+    public int getLeasedConnections()
+    {
+        return leasedConnections.get();
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getLeaseHoldTime()
+    {
+        return leaseHoldTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getCreatedConnections()
+    {
+        return createdConnections;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getReusedConnections()
+    {
+        return reusedConnections;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getClosedConnections()
+    {
+        return closedConnections;
+    }
+
+    private static class IdleConnection
+    {
+        private final PhoenixConnection connection;
+        private final boolean defaultAutoCommit;
+        private final long idleSinceNanos;
+
+        public IdleConnection(PhoenixConnection connection, boolean defaultAutoCommit, long idleSinceNanos)
+        {
+            this.connection = requireNonNull(connection, "connection is null");
+            this.defaultAutoCommit = defaultAutoCommit;
+            this.idleSinceNanos = idleSinceNanos;
+        }
+
+        public PhoenixConnection getConnection()
+        {
+            return connection;
+        }
+
+        public boolean isDefaultAutoCommit()
+        {
+            return defaultAutoCommit;
+        }
+
+        public long getIdleSinceNanos()
+        {
+            return idleSinceNanos;
+        }
+    }
+}
@@ -14,7 +14,9 @@
 package com.facebook.presto.plugin.phoenix;
 
 import com.facebook.presto.spi.connector.Connector;
+import com.facebook.presto.spi.connector.ConnectorIndexProvider;
 import com.facebook.presto.spi.connector.ConnectorMetadata;
+import com.facebook.presto.spi.connector.ConnectorNodePartitioningProvider;
 import com.facebook.presto.spi.connector.ConnectorPageSinkProvider;
 import com.facebook.presto.spi.connector.ConnectorPageSourceProvider;
 import com.facebook.presto.spi.connector.ConnectorSplitManager;
@@ -45,6 +47,8 @@ public class PhoenixConnector
     private final PhoenixSplitManager splitManager;
     private final PhoenixPageSourceProvider pageSourceProvider;
     private final PhoenixPageSinkProvider pageSinkProvider;
+    private final PhoenixNodePartitioningProvider nodePartitioningProvider;
+    private final PhoenixIndexProvider indexProvider;
     private final PhoenixSessionProperties sessionProperties;
     private final PhoenixTableProperties tableProperties;
 
@@ -57,6 +61,8 @@ public class PhoenixConnector
             PhoenixSplitManager splitManager,
             PhoenixPageSourceProvider pageSourceProvider,
             PhoenixPageSinkProvider pageSinkProvider,
+            PhoenixNodePartitioningProvider nodePartitioningProvider,
+            PhoenixIndexProvider indexProvider,
             PhoenixSessionProperties sessionProperties,
             PhoenixTableProperties tableProperties)
     {
@@ -65,6 +71,8 @@ public class PhoenixConnector
         this.splitManager = requireNonNull(splitManager, "splitManager is null");
         this.pageSourceProvider = requireNonNull(pageSourceProvider, "pageSourceProvider is null");
         this.pageSinkProvider = requireNonNull(pageSinkProvider, "pageSinkProvider is null");
+        this.nodePartitioningProvider = requireNonNull(nodePartitioningProvider, "nodePartitioningProvider is null");
+        this.indexProvider = requireNonNull(indexProvider, "indexProvider is null");
         this.sessionProperties = requireNonNull(sessionProperties, "sessionProperties is null");
         this.tableProperties = requireNonNull(tableProperties, "tableProperties is null");
     }
@@ -124,6 +132,18 @@ public class PhoenixConnector
         return pageSinkProvider;
     }
 
+    @Override
+    public ConnectorNodePartitioningProvider getNodePartitioningProvider()
+    {
+        return nodePartitioningProvider;
+    }
+
+    @Override
+    public ConnectorIndexProvider getIndexProvider()
+    {
+        return indexProvider;
+    }
+
     @Override
     public List<PropertyMetadata<?>> getSessionProperties()
     {
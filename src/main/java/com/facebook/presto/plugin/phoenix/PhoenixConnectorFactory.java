@@ -53,7 +53,7 @@ public class PhoenixConnectorFactory
         requireNonNull(requiredConfig, "requiredConfig is null");
 
         try (ThreadContextClassLoader ignored = new ThreadContextClassLoader(classLoader)) {
-            Bootstrap app = new Bootstrap(new PhoenixClientModule(connectorId, context.getTypeManager()));
+            Bootstrap app = new Bootstrap(new PhoenixClientModule(connectorId, context.getTypeManager(), context.getNodeManager()));
 
             Injector injector = app
                     .strictConfig()
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.ConnectorPageSink;
+import com.facebook.presto.spi.Page;
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.collect.ImmutableList;
+import io.airlift.log.Logger;
+import io.airlift.slice.Slice;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.phoenix.schema.PTable;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.apache.hadoop.hbase.HConstants.LATEST_TIMESTAMP;
+
+/**
+ * Writes pages straight to HBase. The mutations of the rows are submitted through a
+ * {@link BufferedMutator}, which flushes them in the background once its buffer is full.
+ */
+public class PhoenixDirectPageSink
+        implements ConnectorPageSink
+{
+    private static final Logger log = Logger.get(PhoenixDirectPageSink.class);
+
+    private final PTable table;
+    private final PhoenixMutationEncoder encoder;
+    private final BufferedMutator mutator;
+    private final long writeBufferSize;
+    private boolean closed;
+
+    public PhoenixDirectPageSink(PhoenixOutputTableHandle handle, PTable table, PhoenixClient phoenixClient, PhoenixRowkeyGenerator rowkeyGenerator, long writeBufferSize)
+    {
+        this.table = requireNonNull(table, "table is null");
+        this.encoder = new PhoenixMutationEncoder(handle, table, rowkeyGenerator);
+        this.writeBufferSize = writeBufferSize;
+        this.mutator = phoenixClient.createBufferedMutator(table, writeBufferSize);
+    }
+
+    @Override
+    public CompletableFuture<?> appendPage(Page page)
+    {
+        try {
+            mutator.mutate(encoder.encode(page, LATEST_TIMESTAMP));
+        }
+        catch (IOException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        return NOT_BLOCKED;
+    }
+
+    @Override
+    public long getSystemMemoryUsage()
+    {
+        // the mutator flushes once its buffer is full
+        return writeBufferSize;
+    }
+
+    @Override
+    public CompletableFuture<Collection<Slice>> finish()
+    {
+        try {
+            mutator.flush();
+        }
+        catch (IOException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        finally {
+            close();
+        }
+        return completedFuture(ImmutableList.of());
+    }
+
+    @Override
+    public void abort()
+    {
+        // mutations handed to the mutator cannot be taken back, like batches already committed through JDBC
+        close();
+    }
+
+    private void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            mutator.close();
+        }
+        catch (IOException e) {
+            log.warn(e, "Failed to close mutator of %s", table.getName().getString());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Table settings suspended by a fast load, see {@link PhoenixClient#beginFastLoad}.
+ */
+public final class PhoenixFastLoad
+{
+    private final PhoenixTableHandle table;
+    private final boolean walDisabled;
+    private final List<String> disabledIndexes;
+    private final boolean asyncIndexRebuild;
+
+    public PhoenixFastLoad(PhoenixTableHandle table, boolean walDisabled, List<String> disabledIndexes, boolean asyncIndexRebuild)
+    {
+        this.table = requireNonNull(table, "table is null");
+        this.walDisabled = walDisabled;
+        this.disabledIndexes = ImmutableList.copyOf(requireNonNull(disabledIndexes, "disabledIndexes is null"));
+        this.asyncIndexRebuild = asyncIndexRebuild;
+    }
+
+    public PhoenixTableHandle getTable()
+    {
+        return table;
+    }
+
+    /**
+     * Whether the WAL of the table was already disabled before the fast load.
+     */
+    public boolean isWalDisabled()
+    {
+        return walDisabled;
+    }
+
+    /**
+     * Indexes that were active before the fast load and are rebuilt after it.
+     */
+    public List<String> getDisabledIndexes()
+    {
+        return disabledIndexes;
+    }
+
+    /**
+     * Whether the indexes are left to the Phoenix IndexTool to rebuild, instead of being rebuilt when the load finishes.
+     */
+    public boolean isAsyncIndexRebuild()
+    {
+        return asyncIndexRebuild;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("table", table)
+                .add("walDisabled", walDisabled)
+                .add("disabledIndexes", disabledIndexes)
+                .add("asyncIndexRebuild", asyncIndexRebuild)
+                .toString();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.ConnectorIndex;
+import com.facebook.presto.spi.ConnectorPageSource;
+import com.facebook.presto.spi.FixedPageSource;
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.RecordCursor;
+import com.facebook.presto.spi.RecordSet;
+import com.google.common.collect.ImmutableList;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.getNativeValue;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Serves index joins by fetching all probe keys of a batch with a single
+ * {@code (k1, k2, ...) IN (...)} query, which Phoenix runs as point lookups or a skip scan.
+ */
+public class PhoenixIndex
+        implements ConnectorIndex
+{
+    private final PhoenixClient phoenixClient;
+    private final PhoenixIndexHandle indexHandle;
+    private final List<PhoenixColumnHandle> lookupColumns;
+    private final List<PhoenixColumnHandle> outputColumns;
+
+    public PhoenixIndex(PhoenixClient phoenixClient, PhoenixIndexHandle indexHandle, List<PhoenixColumnHandle> lookupColumns, List<PhoenixColumnHandle> outputColumns)
+    {
+        this.phoenixClient = requireNonNull(phoenixClient, "phoenixClient is null");
+        this.indexHandle = requireNonNull(indexHandle, "indexHandle is null");
+        this.lookupColumns = ImmutableList.copyOf(requireNonNull(lookupColumns, "lookupColumns is null"));
+        this.outputColumns = ImmutableList.copyOf(requireNonNull(outputColumns, "outputColumns is null"));
+    }
+
+    @Override
+    public ConnectorPageSource lookup(RecordSet recordSet)
+    {
+        List<List<Object>> lookupKeys = getLookupKeys(recordSet);
+        if (lookupKeys.isEmpty()) {
+            return new FixedPageSource(ImmutableList.of());
+        }
+
+        PhoenixConnectionLease lease = null;
+        try {
+            PhoenixTableHandle tableHandle = indexHandle.getTableHandle();
+            lease = phoenixClient.leaseConnection(tableHandle.getSchemaName(), tableHandle.getTableName(), indexHandle.getTableTimestamp());
+            return new PhoenixPageSource(
+                    outputColumns,
+                    lease,
+                    phoenixClient.getLookupResultSet(lease.getConnection(), indexHandle, lookupColumns, outputColumns, lookupKeys));
+        }
+        catch (SQLException e) {
+            if (lease != null) {
+                lease.close();
+            }
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    private List<List<Object>> getLookupKeys(RecordSet recordSet)
+    {
+        // keys containing nulls never match, duplicates only make the statement larger
+        Set<List<Object>> lookupKeys = new LinkedHashSet<>();
+        try (RecordCursor cursor = recordSet.cursor()) {
+            while (cursor.advanceNextPosition()) {
+                List<Object> lookupKey = new ArrayList<>(lookupColumns.size());
+                for (int field = 0; field < lookupColumns.size(); field++) {
+                    Object value = getNativeValue(lookupColumns.get(field).getColumnType(), cursor, field);
+                    if (value == null) {
+                        lookupKey = null;
+                        break;
+                    }
+                    lookupKey.add(value);
+                }
+                if (lookupKey != null) {
+                    lookupKeys.add(lookupKey);
+                }
+            }
+        }
+        return ImmutableList.copyOf(lookupKeys);
+    }
+}
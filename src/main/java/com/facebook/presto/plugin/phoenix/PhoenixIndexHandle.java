@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.ColumnHandle;
+import com.facebook.presto.spi.ConnectorIndexHandle;
+import com.facebook.presto.spi.predicate.TupleDomain;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+public class PhoenixIndexHandle
+        implements ConnectorIndexHandle
+{
+    private final PhoenixTableHandle tableHandle;
+    private final boolean useIndexes;
+    private final TupleDomain<ColumnHandle> tupleDomain;
+    private final long tableTimestamp;
+
+    @JsonCreator
+    public PhoenixIndexHandle(
+            @JsonProperty("tableHandle") PhoenixTableHandle tableHandle,
+            @JsonProperty("useIndexes") boolean useIndexes,
+            @JsonProperty("tupleDomain") TupleDomain<ColumnHandle> tupleDomain,
+            @JsonProperty("tableTimestamp") long tableTimestamp)
+    {
+        this.tableHandle = requireNonNull(tableHandle, "tableHandle is null");
+        this.useIndexes = useIndexes;
+        this.tupleDomain = requireNonNull(tupleDomain, "tupleDomain is null");
+        this.tableTimestamp = tableTimestamp;
+    }
+
+    @JsonProperty
+    public PhoenixTableHandle getTableHandle()
+    {
+        return tableHandle;
+    }
+
+    /**
+     * Whether lookups are served by a covering global index rather than the primary key of the table.
+     */
+    @JsonProperty
+    public boolean isUseIndexes()
+    {
+        return useIndexes;
+    }
+
+    @JsonProperty
+    public TupleDomain<ColumnHandle> getTupleDomain()
+    {
+        return tupleDomain;
+    }
+
+    @JsonProperty
+    public long getTableTimestamp()
+    {
+        return tableTimestamp;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PhoenixIndexHandle that = (PhoenixIndexHandle) o;
+        return useIndexes == that.useIndexes &&
+                tableTimestamp == that.tableTimestamp &&
+                Objects.equals(tableHandle, that.tableHandle) &&
+                Objects.equals(tupleDomain, that.tupleDomain);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(tableHandle, useIndexes, tupleDomain, tableTimestamp);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("tableHandle", tableHandle)
+                .add("useIndexes", useIndexes)
+                .toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.type.CharType;
+import com.facebook.presto.spi.type.Type;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PDataType;
+
+import javax.annotation.Nullable;
+
+import java.util.Objects;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Encoding of a single Phoenix row key column, enough to rebuild row keys outside of a Phoenix connection.
+ */
+public final class PhoenixKeyColumn
+{
+    private final String typeName;
+    private final SortOrder sortOrder;
+    private final Integer maxLength;
+
+    @JsonCreator
+    public PhoenixKeyColumn(
+            @JsonProperty("typeName") String typeName,
+            @JsonProperty("sortOrder") SortOrder sortOrder,
+            @JsonProperty("maxLength") @Nullable Integer maxLength)
+    {
+        this.typeName = requireNonNull(typeName, "typeName is null");
+        this.sortOrder = requireNonNull(sortOrder, "sortOrder is null");
+        this.maxLength = maxLength;
+    }
+
+    public static PhoenixKeyColumn fromPColumn(PColumn column)
+    {
+        return new PhoenixKeyColumn(column.getDataType().getSqlTypeName(), column.getSortOrder(), column.getMaxLength());
+    }
+
+    /**
+     * Key column of a table that is yet to be created from a Presto column type.
+     */
+    public static PhoenixKeyColumn fromPrestoType(Type type, SortOrder sortOrder)
+    {
+        String sqlType = PhoenixClient.toSqlType(type);
+        int parameters = sqlType.indexOf('(');
+        if (parameters < 0) {
+            return new PhoenixKeyColumn(sqlType, sortOrder, null);
+        }
+        // only fixed width types are padded to their maximum length
+        Integer maxLength = type instanceof CharType ? ((CharType) type).getLength() : null;
+        return new PhoenixKeyColumn(sqlType.substring(0, parameters), sortOrder, maxLength);
+    }
+
+    @JsonProperty
+    public String getTypeName()
+    {
+        return typeName;
+    }
+
+    @JsonProperty
+    public SortOrder getSortOrder()
+    {
+        return sortOrder;
+    }
+
+    @JsonProperty
+    @Nullable
+    public Integer getMaxLength()
+    {
+        return maxLength;
+    }
+
+    public PDataType getDataType()
+    {
+        return PDataType.fromSqlTypeName(typeName);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+        PhoenixKeyColumn o = (PhoenixKeyColumn) obj;
+        return Objects.equals(this.typeName, o.typeName) &&
+                Objects.equals(this.sortOrder, o.sortOrder) &&
+                Objects.equals(this.maxLength, o.maxLength);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(typeName, sortOrder, maxLength);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("typeName", typeName)
+                .add("sortOrder", sortOrder)
+                .add("maxLength", maxLength)
+                .omitNullValues()
+                .toString();
+    }
+}
@@ -16,8 +16,10 @@ package com.facebook.presto.plugin.phoenix;
 import com.facebook.presto.spi.ColumnHandle;
 import com.facebook.presto.spi.ColumnMetadata;
 import com.facebook.presto.spi.ConnectorInsertTableHandle;
+import com.facebook.presto.spi.ConnectorNodePartitioning;
 import com.facebook.presto.spi.ConnectorNewTableLayout;
 import com.facebook.presto.spi.ConnectorOutputTableHandle;
+import com.facebook.presto.spi.ConnectorResolvedIndex;
 import com.facebook.presto.spi.ConnectorSession;
 import com.facebook.presto.spi.ConnectorTableHandle;
 import com.facebook.presto.spi.ConnectorTableLayout;
@@ -25,42 +27,80 @@ import com.facebook.presto.spi.ConnectorTableLayoutHandle;
 import com.facebook.presto.spi.ConnectorTableLayoutResult;
 import com.facebook.presto.spi.ConnectorTableMetadata;
 import com.facebook.presto.spi.Constraint;
+import com.facebook.presto.spi.LocalProperty;
 import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.SchemaTableName;
 import com.facebook.presto.spi.SchemaTablePrefix;
+import com.facebook.presto.spi.SortingProperty;
 import com.facebook.presto.spi.TableNotFoundException;
 import com.facebook.presto.spi.connector.ConnectorMetadata;
 import com.facebook.presto.spi.connector.ConnectorOutputMetadata;
+import com.facebook.presto.spi.predicate.TupleDomain;
 import com.facebook.presto.spi.statistics.ComputedStatistics;
+import com.facebook.presto.spi.statistics.TableStatistics;
+import com.facebook.presto.spi.statistics.TableStatisticsMetadata;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.log.Logger;
 import io.airlift.slice.Slice;
-import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PIndexState;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.PTable.IndexType;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.util.IndexUtil;
 
-import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static com.facebook.presto.plugin.phoenix.PhoenixClient.ROWKEY;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.getDuplicateKeyUpdateColumns;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.getWriteMode;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.isBucketExecutionEnabled;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.isFastLoad;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.isFastLoadAsyncIndexRebuild;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.isWritePartitioningEnabled;
+import static com.facebook.presto.plugin.phoenix.TableUtils.getPrimaryKeyColumns;
+import static com.facebook.presto.plugin.phoenix.TableUtils.isQueryTable;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.isArrayType;
+import static com.facebook.presto.spi.StandardErrorCode.NOT_SUPPORTED;
 import static com.facebook.presto.spi.StandardErrorCode.PERMISSION_DENIED;
+import static com.facebook.presto.spi.block.SortOrder.ASC_NULLS_FIRST;
+import static com.facebook.presto.spi.block.SortOrder.DESC_NULLS_LAST;
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.util.Locale.ENGLISH;
 import static java.util.Objects.requireNonNull;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
 
 public class PhoenixMetadata
         implements ConnectorMetadata
 {
+    private static final Logger log = Logger.get(PhoenixMetadata.class);
+    private static final String DELETE_ROW_ID = "$delete_row_id";
+
     private final PhoenixClient phoenixClient;
+    private final PhoenixStatisticsProvider statisticsProvider;
     private final boolean allowDropTable;
 
     private final AtomicReference<Runnable> rollbackAction = new AtomicReference<>();
+    private final AtomicReference<PhoenixFastLoad> fastLoad = new AtomicReference<>();
 
-    public PhoenixMetadata(PhoenixClient phoenixClient, boolean allowDropTable)
+    public PhoenixMetadata(PhoenixClient phoenixClient, PhoenixStatisticsProvider statisticsProvider, boolean allowDropTable)
     {
         this.phoenixClient = requireNonNull(phoenixClient, "client is null");
+        this.statisticsProvider = requireNonNull(statisticsProvider, "statisticsProvider is null");
         this.allowDropTable = allowDropTable;
     }
 
@@ -80,14 +120,178 @@ public class PhoenixMetadata
     public List<ConnectorTableLayoutResult> getTableLayouts(ConnectorSession session, ConnectorTableHandle table, Constraint<ColumnHandle> constraint, Optional<Set<ColumnHandle>> desiredColumns)
     {
         PhoenixTableHandle tableHandle = (PhoenixTableHandle) table;
-        ConnectorTableLayout layout = new ConnectorTableLayout(new PhoenixTableLayoutHandle(tableHandle, constraint.getSummary()));
-        return ImmutableList.of(new ConnectorTableLayoutResult(layout, constraint.getSummary()));
+        if (isQueryTable(tableHandle.getTableName())) {
+            ConnectorTableLayout layout = getTableLayout(session, new PhoenixTableLayoutHandle(tableHandle, constraint.getSummary()));
+            return ImmutableList.of(new ConnectorTableLayoutResult(layout, constraint.getSummary()));
+        }
+
+        // the table is resolved once and shared by the layout and the enforced predicate check
+        PTable pTable = phoenixClient.getPTable(tableHandle);
+        ConnectorTableLayout layout = getTableLayout(session, new PhoenixTableLayoutHandle(tableHandle, constraint.getSummary()), pTable, getColumnsByName(tableHandle));
+        TupleDomain<ColumnHandle> unenforcedConstraint = isRowKeyPrefixPredicate(pTable, constraint.getSummary()) ? TupleDomain.all() : constraint.getSummary();
+        return ImmutableList.of(new ConnectorTableLayoutResult(layout, unenforcedConstraint));
+    }
+
+    /**
+     * Whether the predicate only constrains a leading prefix of the primary key columns, with values that
+     * are bound exactly. Phoenix evaluates such a predicate as the key ranges it scans, so it is reported as
+     * enforced, which is what lets DELETE statements with it run as metadata deletes. Any other predicate
+     * is left for the engine to evaluate again.
+     */
+    private static boolean isRowKeyPrefixPredicate(PTable table, TupleDomain<ColumnHandle> tupleDomain)
+    {
+        if (!tupleDomain.getDomains().isPresent()) {
+            return false;
+        }
+        Map<String, PhoenixColumnHandle> constrainedColumns = tupleDomain.getDomains().get().keySet().stream()
+                .map(PhoenixColumnHandle.class::cast)
+                .collect(toMap(PhoenixColumnHandle::getColumnName, identity()));
+        if (!constrainedColumns.values().stream().allMatch(column -> QueryBuilder.isExactlyBoundType(column.getColumnType()))) {
+            return false;
+        }
+        List<PColumn> keyColumns = getPrimaryKeyColumns(table);
+        int prefixLength = 0;
+        while (prefixLength < keyColumns.size() && constrainedColumns.containsKey(keyColumns.get(prefixLength).getName().getString())) {
+            prefixLength++;
+        }
+        return prefixLength == constrainedColumns.size();
     }
 
     @Override
     public ConnectorTableLayout getTableLayout(ConnectorSession session, ConnectorTableLayoutHandle handle)
     {
-        return new ConnectorTableLayout(handle);
+        PhoenixTableLayoutHandle layoutHandle = (PhoenixTableLayoutHandle) handle;
+        if (isQueryTable(layoutHandle.getTable().getTableName())) {
+            // the predicate is not pushed into the query, splits read the query result as is
+            return new ConnectorTableLayout(new PhoenixTableLayoutHandle(layoutHandle.getTable(), TupleDomain.all()));
+        }
+        return getTableLayout(session, layoutHandle, phoenixClient.getPTable(layoutHandle.getTable()), getColumnsByName(layoutHandle.getTable()));
+    }
+
+    private ConnectorTableLayout getTableLayout(ConnectorSession session, PhoenixTableLayoutHandle layoutHandle, PTable table, Map<String, PhoenixColumnHandle> columns)
+    {
+        return new ConnectorTableLayout(
+                layoutHandle,
+                Optional.empty(),
+                TupleDomain.all(),
+                getNodePartitioning(session, table, columns),
+                Optional.empty(),
+                Optional.empty(),
+                getLocalProperties(table, columns));
+    }
+
+    private Map<String, PhoenixColumnHandle> getColumnsByName(PhoenixTableHandle handle)
+    {
+        return phoenixClient.getColumns(handle, false).stream()
+                .collect(toMap(PhoenixColumnHandle::getColumnName, identity(), (first, second) -> first));
+    }
+
+    /**
+     * The salt byte of a row is a hash of its full row key, so a salted table is bucketed
+     * on its primary key columns when all of them are visible as Presto columns.
+     */
+    private Optional<ConnectorNodePartitioning> getNodePartitioning(ConnectorSession session, PTable table, Map<String, PhoenixColumnHandle> columns)
+    {
+        if (table.getBucketNum() == null || !isBucketExecutionEnabled(session)) {
+            return Optional.empty();
+        }
+
+        ImmutableList.Builder<ColumnHandle> partitioningColumns = ImmutableList.builder();
+        for (PColumn pkColumn : getPrimaryKeyColumns(table)) {
+            PhoenixColumnHandle column = columns.get(pkColumn.getName().getString());
+            if (column == null) {
+                return Optional.empty();
+            }
+            partitioningColumns.add(column);
+        }
+
+        PhoenixPartitioningHandle partitioningHandle = PhoenixPartitioningHandle.saltBucketPartitioning(
+                table.getBucketNum(),
+                RowKeyEncoder.getKeyColumns(table),
+                table.rowKeyOrderOptimizable());
+        return Optional.of(new ConnectorNodePartitioning(partitioningHandle, partitioningColumns.build()));
+    }
+
+    /**
+     * Each split scans a single key range (within a single salt bucket for salted tables),
+     * so its rows come back sorted on the leading primary key columns.
+     */
+    private List<LocalProperty<ColumnHandle>> getLocalProperties(PTable table, Map<String, PhoenixColumnHandle> columns)
+    {
+        if (!phoenixClient.isRowKeyOrdered()) {
+            return ImmutableList.of();
+        }
+
+        ImmutableList.Builder<LocalProperty<ColumnHandle>> properties = ImmutableList.builder();
+        for (PColumn pkColumn : getPrimaryKeyColumns(table)) {
+            PhoenixColumnHandle column = columns.get(pkColumn.getName().getString());
+            if (column == null || !column.getColumnType().isOrderable()) {
+                break;
+            }
+            properties.add(new SortingProperty<>(column, pkColumn.getSortOrder() == SortOrder.DESC ? DESC_NULLS_LAST : ASC_NULLS_FIRST));
+        }
+        return properties.build();
+    }
+
+    /**
+     * Key lookups are served when the join keys include the leading primary key column of the table,
+     * or the leading column of an active global index covering every referenced column.
+     */
+    @Override
+    public Optional<ConnectorResolvedIndex> resolveIndex(ConnectorSession session, ConnectorTableHandle tableHandle, Set<ColumnHandle> indexableColumns, Set<ColumnHandle> outputColumns, TupleDomain<ColumnHandle> tupleDomain)
+    {
+        PhoenixTableHandle handle = (PhoenixTableHandle) tableHandle;
+        if (isQueryTable(handle.getTableName())) {
+            return Optional.empty();
+        }
+        Set<String> lookupColumnNames = indexableColumns.stream()
+                .map(PhoenixColumnHandle.class::cast)
+                .filter(column -> QueryBuilder.isAcceptedType(column.getColumnType()))
+                .map(PhoenixColumnHandle::getColumnName)
+                .collect(toImmutableSet());
+        if (lookupColumnNames.isEmpty() || tupleDomain.isNone()) {
+            return Optional.empty();
+        }
+
+        PTable table = phoenixClient.getPTable(handle);
+        List<PColumn> pkColumns = getPrimaryKeyColumns(table);
+        if (!pkColumns.isEmpty() && lookupColumnNames.contains(pkColumns.get(0).getName().getString())) {
+            return Optional.of(new ConnectorResolvedIndex(new PhoenixIndexHandle(handle, false, tupleDomain, table.getTimeStamp()), tupleDomain));
+        }
+
+        Set<String> referencedColumnNames = ImmutableSet.<String>builder()
+                .addAll(lookupColumnNames)
+                .addAll(getColumnNames(outputColumns))
+                .addAll(getColumnNames(tupleDomain.getDomains().get().keySet()))
+                .build();
+        for (PTable index : table.getIndexes()) {
+            if (index.getIndexType() != IndexType.GLOBAL || index.getIndexState() != PIndexState.ACTIVE) {
+                continue;
+            }
+            List<PColumn> indexPkColumns = getPrimaryKeyColumns(index);
+            Set<String> coveredColumnNames = index.getColumns().stream()
+                    .map(column -> IndexUtil.getDataColumnName(column.getName().getString()))
+                    .collect(toImmutableSet());
+            if (!indexPkColumns.isEmpty() &&
+                    lookupColumnNames.contains(IndexUtil.getDataColumnName(indexPkColumns.get(0).getName().getString())) &&
+                    coveredColumnNames.containsAll(referencedColumnNames)) {
+                return Optional.of(new ConnectorResolvedIndex(new PhoenixIndexHandle(handle, true, tupleDomain, table.getTimeStamp()), tupleDomain));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Set<String> getColumnNames(Collection<ColumnHandle> columns)
+    {
+        return columns.stream()
+                .map(column -> ((PhoenixColumnHandle) column).getColumnName())
+                .collect(toImmutableSet());
+    }
+
+    @Override
+    public TableStatistics getTableStatistics(ConnectorSession session, ConnectorTableHandle tableHandle, Constraint<ColumnHandle> constraint)
+    {
+        return statisticsProvider.getTableStatistics((PhoenixTableHandle) tableHandle);
     }
 
     @Override
@@ -126,27 +330,25 @@ public class PhoenixMetadata
     @Override
     public Map<SchemaTableName, List<ColumnMetadata>> listTableColumns(ConnectorSession session, SchemaTablePrefix prefix)
     {
-        ImmutableMap.Builder<SchemaTableName, List<ColumnMetadata>> columns = ImmutableMap.builder();
-        List<SchemaTableName> tables;
-        if (prefix.getTableName() != null) {
-            tables = ImmutableList.of(new SchemaTableName(prefix.getSchemaName(), prefix.getTableName()));
+        if (prefix.getTableName() == null) {
+            return phoenixClient.listTableColumns(prefix.getSchemaName());
         }
-        else {
-            tables = listTables(session, prefix.getSchemaName());
-        }
-        for (SchemaTableName tableName : tables) {
-            try {
-                PhoenixTableHandle tableHandle = phoenixClient.getTableHandle(tableName);
-                if (tableHandle == null) {
-                    continue;
-                }
-                columns.put(tableName, getTableMetadata(session, tableHandle).getColumns());
-            }
-            catch (TableNotFoundException e) {
-                // table disappeared during listing operation
+
+        SchemaTableName tableName = new SchemaTableName(prefix.getSchemaName(), prefix.getTableName());
+        try {
+            PhoenixTableHandle tableHandle = phoenixClient.getTableHandle(tableName);
+            if (tableHandle == null) {
+                return ImmutableMap.of();
             }
+            List<ColumnMetadata> columns = phoenixClient.getColumns(tableHandle, false).stream()
+                    .map(PhoenixColumnHandle::getColumnMetadata)
+                    .collect(toImmutableList());
+            return ImmutableMap.of(tableName, columns);
+        }
+        catch (TableNotFoundException e) {
+            // table disappeared during listing operation
+            return ImmutableMap.of();
         }
-        return columns.build();
     }
 
     @Override
@@ -158,23 +360,13 @@ public class PhoenixMetadata
     @Override
     public void createSchema(ConnectorSession session, String schemaName, Map<String, Object> properties)
     {
-        try (PhoenixConnection connection = phoenixClient.getConnection()) {
-            phoenixClient.execute(connection, "CREATE SCHEMA " + schemaName);
-        }
-        catch (SQLException e) {
-            throw new PrestoException(PHOENIX_ERROR, e);
-        }
+        phoenixClient.createSchema(schemaName);
     }
 
     @Override
     public void dropSchema(ConnectorSession session, String schemaName)
     {
-        try (PhoenixConnection connection = phoenixClient.getConnection()) {
-            phoenixClient.execute(connection, "DROP SCHEMA " + schemaName);
-        }
-        catch (SQLException e) {
-            throw new PrestoException(PHOENIX_ERROR, e);
-        }
+        phoenixClient.dropSchema(schemaName);
     }
 
     @Override
@@ -194,7 +386,125 @@ public class PhoenixMetadata
             throw new PrestoException(PERMISSION_DENIED, "DROP TABLE is disabled in this catalog");
         }
         PhoenixTableHandle handle = (PhoenixTableHandle) tableHandle;
+        checkNotQueryTable(handle);
         phoenixClient.dropTable(handle);
+        statisticsProvider.dropStatistics(handle.getSchemaTableName());
+    }
+
+    @Override
+    public ColumnHandle getUpdateRowIdColumnHandle(ConnectorSession session, ConnectorTableHandle tableHandle)
+    {
+        // never read, deletes are either metadata deletes or rejected
+        return new PhoenixColumnHandle(((PhoenixTableHandle) tableHandle).getConnectorId(), DELETE_ROW_ID, BIGINT);
+    }
+
+    @Override
+    public ConnectorTableHandle beginDelete(ConnectorSession session, ConnectorTableHandle tableHandle)
+    {
+        throw new PrestoException(NOT_SUPPORTED, "DELETE is only supported with a predicate on a leading prefix of the primary key columns");
+    }
+
+    @Override
+    public boolean supportsMetadataDelete(ConnectorSession session, ConnectorTableHandle tableHandle, ConnectorTableLayoutHandle tableLayoutHandle)
+    {
+        PhoenixTableLayoutHandle layoutHandle = (PhoenixTableLayoutHandle) tableLayoutHandle;
+        return layoutHandle.getTupleDomain().isNone() || isRowKeyPrefixPredicate(layoutHandle.getTable(), layoutHandle.getTupleDomain());
+    }
+
+    @Override
+    public OptionalLong metadataDelete(ConnectorSession session, ConnectorTableHandle tableHandle, ConnectorTableLayoutHandle tableLayoutHandle)
+    {
+        PhoenixTableLayoutHandle layoutHandle = (PhoenixTableLayoutHandle) tableLayoutHandle;
+        checkNotQueryTable(layoutHandle.getTable());
+        return OptionalLong.of(phoenixClient.deleteRows(layoutHandle));
+    }
+
+    @Override
+    public TableStatisticsMetadata getStatisticsCollectionMetadata(ConnectorSession session, ConnectorTableMetadata tableMetadata)
+    {
+        return statisticsProvider.getStatisticsCollectionMetadata(tableMetadata);
+    }
+
+    /**
+     * A new salted table is bucketed on its salt byte, which can be computed before the table
+     * exists. A new unsalted table starts out with a single region, so it is not partitioned.
+     */
+    @Override
+    public Optional<ConnectorNewTableLayout> getNewTableLayout(ConnectorSession session, ConnectorTableMetadata tableMetadata)
+    {
+        Optional<Integer> saltBuckets = PhoenixTableProperties.getSaltBuckets(tableMetadata.getProperties());
+        List<String> rowkeys = PhoenixTableProperties.getRowkeys(tableMetadata.getProperties());
+        if (!saltBuckets.isPresent() || rowkeys == null || rowkeys.isEmpty() || !isWritePartitioningEnabled(session)) {
+            return Optional.empty();
+        }
+
+        Map<String, ColumnMetadata> columns = tableMetadata.getColumns().stream()
+                .collect(toMap(column -> column.getName().toLowerCase(ENGLISH), identity(), (first, second) -> first));
+        ImmutableList.Builder<String> partitionColumns = ImmutableList.builder();
+        ImmutableList.Builder<PhoenixKeyColumn> keyColumns = ImmutableList.builder();
+        for (String rowkey : rowkeys) {
+            // a row key entry is a column name optionally followed by ASC, DESC or ROW_TIMESTAMP
+            List<String> parts = Splitter.on(CharMatcher.whitespace()).omitEmptyStrings().splitToList(rowkey);
+            ColumnMetadata column = parts.isEmpty() ? null : columns.get(parts.get(0).toLowerCase(ENGLISH));
+            if (column == null || isArrayType(column.getType())) {
+                return Optional.empty();
+            }
+            SortOrder sortOrder = parts.stream().anyMatch("DESC"::equalsIgnoreCase) ? SortOrder.DESC : SortOrder.ASC;
+            partitionColumns.add(column.getName());
+            keyColumns.add(PhoenixKeyColumn.fromPrestoType(column.getType(), sortOrder));
+        }
+
+        // new tables always use the row key order optimizable separators
+        PhoenixPartitioningHandle partitioningHandle = PhoenixPartitioningHandle.saltBucketPartitioning(saltBuckets.get(), keyColumns.build(), true);
+        return Optional.of(new ConnectorNewTableLayout(partitioningHandle, partitionColumns.build()));
+    }
+
+    /**
+     * Partitions inserted rows on their row key, so that the rows of a salt bucket, or of a region
+     * of an unsalted table, are all written by a single writer in larger per-region batches.
+     */
+    @Override
+    public Optional<ConnectorNewTableLayout> getInsertLayout(ConnectorSession session, ConnectorTableHandle tableHandle)
+    {
+        PhoenixTableHandle handle = (PhoenixTableHandle) tableHandle;
+        if (isQueryTable(handle.getTableName()) || !isWritePartitioningEnabled(session)) {
+            return Optional.empty();
+        }
+
+        PTable table = phoenixClient.getPTable(handle);
+        Map<String, PhoenixColumnHandle> columns = phoenixClient.getColumns(handle, true).stream()
+                .collect(toMap(PhoenixColumnHandle::getColumnName, identity(), (first, second) -> first));
+        ImmutableList.Builder<String> partitionColumns = ImmutableList.builder();
+        for (PColumn pkColumn : getPrimaryKeyColumns(table)) {
+            String columnName = pkColumn.getName().getString();
+            PhoenixColumnHandle column = columns.get(columnName);
+            // generated row keys are only assigned by the page sink
+            if (ROWKEY.equals(columnName) || column == null) {
+                return Optional.empty();
+            }
+            // layouts refer to columns by their names in the table metadata
+            partitionColumns.add(column.getColumnMetadata().getName());
+        }
+
+        PhoenixPartitioningHandle partitioningHandle;
+        if (table.getBucketNum() != null) {
+            partitioningHandle = PhoenixPartitioningHandle.saltBucketPartitioning(
+                    table.getBucketNum(),
+                    RowKeyEncoder.getKeyColumns(table),
+                    table.rowKeyOrderOptimizable());
+        }
+        else {
+            List<byte[]> splitKeys = phoenixClient.getRegionSplitKeys(table);
+            if (splitKeys.isEmpty()) {
+                // routing the rows of a single region to a single writer would only serialize the insert
+                return Optional.empty();
+            }
+            partitioningHandle = PhoenixPartitioningHandle.regionPartitioning(
+                    splitKeys,
+                    RowKeyEncoder.getKeyColumns(table),
+                    table.rowKeyOrderOptimizable());
+        }
+        return Optional.of(new ConnectorNewTableLayout(partitioningHandle, partitionColumns.build()));
     }
 
     @Override
@@ -202,15 +512,26 @@ public class PhoenixMetadata
     {
         checkNoRollback();
 
-        PhoenixOutputTableHandle handle = phoenixClient.createTable(tableMetadata);
-        setRollback(() -> rollbackCreateTable(handle));
+        PhoenixOutputTableHandle handle = withBulkLoadDirectory(session, phoenixClient.createTable(tableMetadata));
+        setRollback(() -> {
+            if (handle.getBulkLoadDirectory().isPresent()) {
+                phoenixClient.deleteBulkLoadDirectory(handle);
+            }
+            rollbackCreateTable(handle);
+        });
         return handle;
     }
 
     @Override
     public Optional<ConnectorOutputMetadata> finishCreateTable(ConnectorSession session, ConnectorOutputTableHandle tableHandle, Collection<Slice> fragments, Collection<ComputedStatistics> computedStatistics)
     {
+        PhoenixOutputTableHandle handle = (PhoenixOutputTableHandle) tableHandle;
+        // a failed load rolls back the table creation
+        if (handle.getBulkLoadDirectory().isPresent()) {
+            phoenixClient.bulkLoad(handle);
+        }
         clearRollback();
+        storeStatistics(handle, computedStatistics, true);
         return Optional.empty();
     }
 
@@ -230,7 +551,15 @@ public class PhoenixMetadata
         checkNoRollback();
 
         PhoenixTableHandle handle = (PhoenixTableHandle) tableHandle;
-        PhoenixOutputTableHandle outputTableHandle = phoenixClient.beginInsertTable(getTableMetadata(session, handle, true));
+        checkNotQueryTable(handle);
+        if (isFastLoad(session)) {
+            // before the output handle pins the version of the table metadata the page sinks write with
+            fastLoad.set(phoenixClient.beginFastLoad(handle, isFastLoadAsyncIndexRebuild(session)));
+        }
+        PhoenixOutputTableHandle outputTableHandle = withBulkLoadDirectory(session, phoenixClient.beginInsertTable(handle));
+        if (outputTableHandle.getBulkLoadDirectory().isPresent()) {
+            setRollback(() -> phoenixClient.deleteBulkLoadDirectory(outputTableHandle));
+        }
         // phoenixClient.createSnapshotTable(session, outputTableHandle);
         // setRollback(() -> rollbackInsert(session, outputTableHandle));
         return outputTableHandle;
@@ -239,13 +568,48 @@ public class PhoenixMetadata
     @Override
     public Optional<ConnectorOutputMetadata> finishInsert(ConnectorSession session, ConnectorInsertTableHandle tableHandle, Collection<Slice> fragments, Collection<ComputedStatistics> computedStatistics)
     {
+        PhoenixOutputTableHandle handle = (PhoenixOutputTableHandle) tableHandle;
+        if (handle.getBulkLoadDirectory().isPresent()) {
+            phoenixClient.bulkLoad(handle);
+        }
+        finishFastLoad();
         clearRollback();
 
         // phoenixClient.deleteSnapshotIfPresent(session, (PhoenixOutputTableHandle) tableHandle, false);
 
+        storeStatistics(handle, computedStatistics, false);
         return Optional.empty();
     }
 
+    private PhoenixOutputTableHandle withBulkLoadDirectory(ConnectorSession session, PhoenixOutputTableHandle handle)
+    {
+        // ON DUPLICATE KEY UPDATE has to read the current rows, which HFiles cannot
+        if (getWriteMode(session) != PhoenixWriteMode.BULK_LOAD || !getDuplicateKeyUpdateColumns(session).isEmpty()) {
+            return handle;
+        }
+        if (!PhoenixMutationEncoder.isSupported(phoenixClient.getPTable(handle), handle.getColumnNames())) {
+            return handle;
+        }
+        // one timestamp for the cells of all page sinks, so the workers' clocks do not decide which write of a row wins
+        return handle.withBulkLoadDirectory(phoenixClient.createBulkLoadDirectory(session.getQueryId()), System.currentTimeMillis());
+    }
+
+    private void storeStatistics(PhoenixOutputTableHandle handle, Collection<ComputedStatistics> computedStatistics, boolean replace)
+    {
+        try {
+            statisticsProvider.storeStatistics(
+                    new SchemaTableName(handle.getSchemaName(), handle.getTableName()),
+                    handle.getColumnNames(),
+                    handle.getColumnTypes(),
+                    computedStatistics,
+                    replace);
+        }
+        catch (PrestoException e) {
+            // the data is already committed, stale statistics must not fail the write
+            log.warn(e, "Failed to store statistics of %s.%s", handle.getSchemaName(), handle.getTableName());
+        }
+    }
+
     // private void rollbackInsert(ConnectorSession session, PhoenixOutputTableHandle handle)
     // {
     // phoenixClient.deleteSnapshotIfPresent(session, handle, true);
@@ -258,7 +622,16 @@ public class PhoenixMetadata
 
     private void checkNoRollback()
     {
-        checkState(rollbackAction.get() == null, "Cannot begin a new write while in an existing one");
+        checkState(rollbackAction.get() == null && fastLoad.get() == null, "Cannot begin a new write while in an existing one");
+    }
+
+    private void finishFastLoad()
+    {
+        // cleared first, so a rollback after a failed restore does not run it again
+        PhoenixFastLoad load = fastLoad.getAndSet(null);
+        if (load != null) {
+            phoenixClient.finishFastLoad(load);
+        }
     }
 
     private void clearRollback()
@@ -268,13 +641,20 @@ public class PhoenixMetadata
 
     public void rollback()
     {
-        Optional.ofNullable(rollbackAction.getAndSet(null)).ifPresent(Runnable::run);
+        try {
+            Optional.ofNullable(rollbackAction.getAndSet(null)).ifPresent(Runnable::run);
+        }
+        finally {
+            // the rows written so far stay, so the table has to be made durable and indexed either way
+            finishFastLoad();
+        }
     }
 
     @Override
     public void addColumn(ConnectorSession session, ConnectorTableHandle tableHandle, ColumnMetadata column)
     {
         PhoenixTableHandle handle = (PhoenixTableHandle) tableHandle;
+        checkNotQueryTable(handle);
         phoenixClient.addColumn(handle, column);
     }
 
@@ -283,6 +663,14 @@ public class PhoenixMetadata
     {
         PhoenixTableHandle handle = (PhoenixTableHandle) tableHandle;
         PhoenixColumnHandle columnHandle = (PhoenixColumnHandle) column;
+        checkNotQueryTable(handle);
         phoenixClient.dropColumn(handle, columnHandle);
     }
+
+    private static void checkNotQueryTable(PhoenixTableHandle handle)
+    {
+        if (isQueryTable(handle.getTableName())) {
+            throw new PrestoException(NOT_SUPPORTED, "Query tables are read only: " + handle.getSchemaTableName());
+        }
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.SchemaTableName;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.weakref.jmx.Managed;
+
+import javax.inject.Inject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static com.facebook.presto.plugin.phoenix.TableUtils.normalizeTableName;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Caches the schema, table, column and table property lookups the coordinator performs
+ * while planning, so that hot tables do not need a metadata round trip per query.
+ * Entries expire after {@code metadata-cache-ttl} and are invalidated by DDL issued
+ * through this connector, so only DDL issued elsewhere can be stale, for up to the TTL.
+ */
+public class PhoenixMetadataCache
+{
+    private static final String SCHEMAS_KEY = "";
+
+    private final boolean enabled;
+    private final Cache<String, Set<String>> schemaNames;
+    private final Cache<SchemaTableName, Optional<PhoenixTableHandle>> tableHandles;
+    private final Cache<ColumnsKey, List<PhoenixColumnHandle>> columns;
+    private final Cache<SchemaTableName, Map<String, Object>> tableProperties;
+
+    @Inject
+    public PhoenixMetadataCache(PhoenixConfig config)
+    {
+        requireNonNull(config, "config is null");
+        long ttl = config.getMetadataCacheTtl().toMillis();
+        this.enabled = ttl > 0;
+        this.schemaNames = newCache(ttl, config.getMetadataCacheMaximumSize());
+        this.tableHandles = newCache(ttl, config.getMetadataCacheMaximumSize());
+        this.columns = newCache(ttl, config.getMetadataCacheMaximumSize());
+        this.tableProperties = newCache(ttl, config.getMetadataCacheMaximumSize());
+    }
+
+    private static <K, V> Cache<K, V> newCache(long ttl, long maximumSize)
+    {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl, MILLISECONDS)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    public Set<String> getSchemaNames(Supplier<Set<String>> loader)
+    {
+        return get(schemaNames, SCHEMAS_KEY, loader::get);
+    }
+
+    public Optional<PhoenixTableHandle> getTableHandle(SchemaTableName tableName, Supplier<Optional<PhoenixTableHandle>> loader)
+    {
+        return get(tableHandles, tableName, loader::get);
+    }
+
+    public List<PhoenixColumnHandle> getColumns(SchemaTableName tableName, boolean requiredRowKey, Supplier<List<PhoenixColumnHandle>> loader)
+    {
+        return get(columns, new ColumnsKey(tableName, requiredRowKey), loader::get);
+    }
+
+    public Map<String, Object> getTableProperties(SchemaTableName tableName, Supplier<Map<String, Object>> loader)
+    {
+        return get(tableProperties, tableName, loader::get);
+    }
+
+    public void invalidateSchemas()
+    {
+        schemaNames.invalidateAll();
+    }
+
+    /**
+     * Invalidates all entries of the table, including those of dynamic column views on it.
+     */
+    public void invalidateTable(SchemaTableName tableName)
+    {
+        String normalizedName = normalizeTableName(tableName.getTableName());
+        tableHandles.asMap().keySet().removeIf(key -> isSameTable(key, tableName.getSchemaName(), normalizedName));
+        columns.asMap().keySet().removeIf(key -> isSameTable(key.getTableName(), tableName.getSchemaName(), normalizedName));
+        tableProperties.asMap().keySet().removeIf(key -> isSameTable(key, tableName.getSchemaName(), normalizedName));
+    }
+
+    @Managed
+    public void flush()
+    {
+        schemaNames.invalidateAll();
+        tableHandles.invalidateAll();
+        columns.invalidateAll();
+        tableProperties.invalidateAll();
+    }
+
+    @Managed
+    public long getSchemaNamesHitCount()
+    {
+        return schemaNames.stats().hitCount();
+    }
+
+    @Managed
+    public long getSchemaNamesMissCount()
+    {
+        return schemaNames.stats().missCount();
+    }
+
+    @Managed
+    public long getTableHandlesHitCount()
+    {
+        return tableHandles.stats().hitCount();
+    }
+
+    @Managed
+    public long getTableHandlesMissCount()
+    {
+        return tableHandles.stats().missCount();
+    }
+
+    @Managed
+    public long getColumnsHitCount()
+    {
+        return columns.stats().hitCount();
+    }
+
+    @Managed
+    public long getColumnsMissCount()
+    {
+        return columns.stats().missCount();
+    }
+
+    @Managed
+    public long getTablePropertiesHitCount()
+    {
+        return tableProperties.stats().hitCount();
+    }
+
+    @Managed
+    public long getTablePropertiesMissCount()
+    {
+        return tableProperties.stats().missCount();
+    }
+
+    @Managed
+    public long getSize()
+    {
+        return schemaNames.size() + tableHandles.size() + columns.size() + tableProperties.size();
+    }
+
+    private <K, V> V get(Cache<K, V> cache, K key, Callable<V> loader)
+    {
+        if (!enabled) {
+            try {
+                return loader.call();
+            }
+            catch (Exception e) {
+                throwIfUnchecked(e);
+                throw new RuntimeException(e);
+            }
+        }
+        try {
+            return cache.get(key, loader);
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static boolean isSameTable(SchemaTableName key, String schemaName, String normalizedTableName)
+    {
+        return key.getSchemaName().equals(schemaName) && normalizeTableName(key.getTableName()).equals(normalizedTableName);
+    }
+
+    private static final class ColumnsKey
+    {
+        private final SchemaTableName tableName;
+        private final boolean requiredRowKey;
+
+        public ColumnsKey(SchemaTableName tableName, boolean requiredRowKey)
+        {
+            this.tableName = requireNonNull(tableName, "tableName is null");
+            this.requiredRowKey = requiredRowKey;
+        }
+
+        public SchemaTableName getTableName()
+        {
+            return tableName;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            ColumnsKey other = (ColumnsKey) obj;
+            return requiredRowKey == other.requiredRowKey &&
+                    Objects.equals(tableName, other.tableName);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(tableName, requiredRowKey);
+        }
+    }
+}
@@ -15,10 +15,17 @@ package com.facebook.presto.plugin.phoenix;
 
 import io.airlift.configuration.Config;
 import io.airlift.configuration.ConfigDescription;
+import io.airlift.units.Duration;
+
+import javax.validation.constraints.NotNull;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 public class PhoenixMetadataConfig
 {
     private boolean allowDropTable;
+    private boolean collectColumnStatisticsOnWrite = true;
+    private Duration statisticsCacheTtl = new Duration(10, MINUTES);
 
     public boolean isAllowDropTable()
     {
@@ -32,4 +39,31 @@ public class PhoenixMetadataConfig
         this.allowDropTable = allowDropTable;
         return this;
     }
+
+    public boolean isCollectColumnStatisticsOnWrite()
+    {
+        return collectColumnStatisticsOnWrite;
+    }
+
+    @Config("collect-column-statistics-on-write")
+    @ConfigDescription("Compute column statistics during INSERT and CREATE TABLE AS and store them in PRESTO_STATISTICS")
+    public PhoenixMetadataConfig setCollectColumnStatisticsOnWrite(boolean collectColumnStatisticsOnWrite)
+    {
+        this.collectColumnStatisticsOnWrite = collectColumnStatisticsOnWrite;
+        return this;
+    }
+
+    @NotNull
+    public Duration getStatisticsCacheTtl()
+    {
+        return statisticsCacheTtl;
+    }
+
+    @Config("statistics-cache-ttl")
+    @ConfigDescription("How long statistics stored by the connector are cached")
+    public PhoenixMetadataConfig setStatisticsCacheTtl(Duration statisticsCacheTtl)
+    {
+        this.statisticsCacheTtl = statisticsCacheTtl;
+        return this;
+    }
 }
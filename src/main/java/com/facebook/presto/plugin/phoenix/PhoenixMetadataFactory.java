@@ -20,18 +20,20 @@ import static java.util.Objects.requireNonNull;
 public class PhoenixMetadataFactory
 {
     private final PhoenixClient phoenixClient;
+    private final PhoenixStatisticsProvider statisticsProvider;
     private final boolean allowDropTable;
 
     @Inject
-    public PhoenixMetadataFactory(PhoenixClient phoenixClient, PhoenixMetadataConfig config)
+    public PhoenixMetadataFactory(PhoenixClient phoenixClient, PhoenixStatisticsProvider statisticsProvider, PhoenixMetadataConfig config)
     {
         this.phoenixClient = requireNonNull(phoenixClient, "phoenixClient is null");
+        this.statisticsProvider = requireNonNull(statisticsProvider, "statisticsProvider is null");
         requireNonNull(config, "config is null");
         this.allowDropTable = config.isAllowDropTable();
     }
 
     public PhoenixMetadata create()
     {
-        return new PhoenixMetadata(phoenixClient, allowDropTable);
+        return new PhoenixMetadata(phoenixClient, statisticsProvider, allowDropTable);
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.plugin.phoenix.TypeUtils.PhoenixObjectReader;
+import com.facebook.presto.spi.Page;
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.type.Type;
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.hbase.index.util.GenericKeyValueBuilder;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PRow;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.PTableType;
+import org.apache.phoenix.schema.types.PArrayDataType;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDouble;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.schema.types.PVarbinary;
+import org.apache.phoenix.schema.types.PVarchar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixClient.ROWKEY;
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_NON_TRANSIENT_ERROR;
+import static com.facebook.presto.plugin.phoenix.TableUtils.getPrimaryKeyColumns;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.isArrayType;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.createPhoenixObjectReader;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.toPhoenixObject;
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+import static com.facebook.presto.spi.type.DoubleType.DOUBLE;
+import static com.facebook.presto.spi.type.IntegerType.INTEGER;
+import static com.facebook.presto.spi.type.VarbinaryType.VARBINARY;
+import static com.facebook.presto.spi.type.Varchars.isVarcharType;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.toIntExact;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Encodes pages into the HBase mutations an UPSERT of their rows would produce. Row keys and cell
+ * values are encoded from the blocks with the Phoenix codecs of the table columns, and the
+ * {@link PTable} turns them into mutations. Only tables that Phoenix does not maintain anything
+ * else for on writes can be written this way, see {@link #isSupported}.
+ */
+public class PhoenixMutationEncoder
+{
+    private final PTable table;
+    private final RowKeyEncoder rowKeyEncoder;
+    private final List<PColumn> keyColumns;
+    // page channel of each primary key column, or -1 for a generated row key
+    private final int[] keyChannels;
+    private final List<Type> keyTypes;
+    private final List<PColumn> valueColumns;
+    private final int[] valueChannels;
+    private final List<ValueEncoder> valueEncoders;
+    private final PhoenixRowkeyGenerator rowkeyGenerator;
+
+    public PhoenixMutationEncoder(PhoenixOutputTableHandle handle, PTable table, PhoenixRowkeyGenerator rowkeyGenerator)
+    {
+        requireNonNull(handle, "handle is null");
+        this.table = requireNonNull(table, "table is null");
+        this.rowkeyGenerator = requireNonNull(rowkeyGenerator, "rowkeyGenerator is null");
+        checkArgument(isSupported(table, handle.getColumnNames()), "rows of table %s cannot be encoded into mutations", handle.getTableName());
+        this.rowKeyEncoder = RowKeyEncoder.create(table);
+        this.keyColumns = getPrimaryKeyColumns(table);
+
+        List<String> columnNames = handle.getColumnNames();
+        List<Type> columnTypes = handle.getColumnTypes();
+        // the generated row key is not part of the pages
+        int channelOffset = ROWKEY.equalsIgnoreCase(columnNames.get(0)) ? 1 : 0;
+
+        keyChannels = new int[keyColumns.size()];
+        ImmutableList.Builder<Type> keyTypes = ImmutableList.builder();
+        for (int i = 0; i < keyColumns.size(); i++) {
+            int columnPos = indexOfColumn(columnNames, keyColumns.get(i));
+            keyChannels[i] = columnPos - channelOffset;
+            keyTypes.add(columnTypes.get(columnPos));
+        }
+        this.keyTypes = keyTypes.build();
+
+        ImmutableList.Builder<PColumn> valueColumns = ImmutableList.builder();
+        ImmutableList.Builder<Integer> valueChannels = ImmutableList.builder();
+        ImmutableList.Builder<ValueEncoder> valueEncoders = ImmutableList.builder();
+        for (int columnPos = channelOffset; columnPos < columnNames.size(); columnPos++) {
+            PColumn column = findColumn(table, columnNames.get(columnPos)).get();
+            if (!keyColumns.contains(column)) {
+                valueColumns.add(column);
+                valueChannels.add(columnPos - channelOffset);
+                valueEncoders.add(createValueEncoder(columnTypes.get(columnPos), column));
+            }
+        }
+        this.valueColumns = valueColumns.build();
+        this.valueChannels = valueChannels.build().stream().mapToInt(Integer::intValue).toArray();
+        this.valueEncoders = valueEncoders.build();
+    }
+
+    /**
+     * Rows of a table can be encoded into mutations when writes to it are plain puts: no secondary
+     * indexes, which Phoenix maintains from the client even for immutable rows, no transactions, and
+     * no row timestamp column, whose value becomes the cell timestamp. All columns written must be columns of the table,
+     * which rules out dynamic columns, and all primary key columns must be written.
+     */
+    public static boolean isSupported(PTable table, List<String> columnNames)
+    {
+        if (table.getType() != PTableType.TABLE || !table.getIndexes().isEmpty() || table.isTransactional()) {
+            return false;
+        }
+        List<PColumn> keyColumns = getPrimaryKeyColumns(table);
+        if (keyColumns.stream().anyMatch(PColumn::isRowTimestamp)) {
+            return false;
+        }
+        if (!columnNames.stream().allMatch(name -> findColumn(table, name).isPresent())) {
+            return false;
+        }
+        return keyColumns.stream().allMatch(column -> indexOfColumn(columnNames, column) >= 0);
+    }
+
+    private static Optional<PColumn> findColumn(PTable table, String name)
+    {
+        List<PColumn> columns = table.getColumns().stream()
+                .filter(column -> column.getName().getString().equalsIgnoreCase(name))
+                .collect(ImmutableList.toImmutableList());
+        // the same name in several column families cannot be told apart
+        return columns.size() == 1 ? Optional.of(columns.get(0)) : Optional.empty();
+    }
+
+    static int indexOfColumn(List<String> columnNames, PColumn column)
+    {
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (columnNames.get(i).equalsIgnoreCase(column.getName().getString())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param timestamp timestamp of the cells, {@code HConstants.LATEST_TIMESTAMP} to have the region servers assign it
+     */
+    public List<Mutation> encode(Page page, long timestamp)
+    {
+        List<Mutation> mutations = new ArrayList<>(page.getPositionCount());
+        Object[] keyValues = new Object[keyColumns.size()];
+        for (int position = 0; position < page.getPositionCount(); position++) {
+            for (int i = 0; i < keyColumns.size(); i++) {
+                int channel = keyChannels[i];
+                if (channel < 0) {
+                    keyValues[i] = rowkeyGenerator.generate();
+                    continue;
+                }
+                keyValues[i] = toPhoenixObject(keyTypes.get(i), page.getBlock(channel), position);
+                if (keyValues[i] == null && !keyColumns.get(i).isNullable()) {
+                    throw new PrestoException(PHOENIX_NON_TRANSIENT_ERROR, format("Primary key column %s must not be null", keyColumns.get(i).getName().getString()));
+                }
+            }
+
+            PRow row = table.newRow(GenericKeyValueBuilder.INSTANCE, timestamp, new ImmutableBytesWritable(rowKeyEncoder.encode(keyValues)), false);
+            for (int i = 0; i < valueColumns.size(); i++) {
+                Block block = page.getBlock(valueChannels[i]);
+                // a null value deletes the cell, as an UPSERT would
+                row.setValue(valueColumns.get(i), block.isNull(position) ? null : valueEncoders.get(i).encode(block, position));
+            }
+            mutations.addAll(row.toRowMutations());
+        }
+        return mutations;
+    }
+
+    private interface ValueEncoder
+    {
+        byte[] encode(Block block, int position);
+    }
+
+    private static ValueEncoder createValueEncoder(Type type, PColumn column)
+    {
+        PDataType dataType = column.getDataType();
+        // values of columns outside of the primary key are always stored in ascending order
+        if (isVarcharType(type) && dataType == PVarchar.INSTANCE) {
+            return (block, position) -> type.getSlice(block, position).getBytes();
+        }
+        if (VARBINARY.equals(type) && dataType == PVarbinary.INSTANCE) {
+            return (block, position) -> type.getSlice(block, position).getBytes();
+        }
+        if (BIGINT.equals(type) && dataType == PLong.INSTANCE) {
+            return (block, position) -> {
+                byte[] bytes = new byte[Bytes.SIZEOF_LONG];
+                dataType.getCodec().encodeLong(type.getLong(block, position), bytes, 0);
+                return bytes;
+            };
+        }
+        if (INTEGER.equals(type) && dataType == PInteger.INSTANCE) {
+            return (block, position) -> {
+                byte[] bytes = new byte[Bytes.SIZEOF_INT];
+                dataType.getCodec().encodeInt(toIntExact(type.getLong(block, position)), bytes, 0);
+                return bytes;
+            };
+        }
+        if (DOUBLE.equals(type) && dataType == PDouble.INSTANCE) {
+            return (block, position) -> {
+                byte[] bytes = new byte[Bytes.SIZEOF_DOUBLE];
+                dataType.getCodec().encodeDouble(type.getDouble(block, position), bytes, 0);
+                return bytes;
+            };
+        }
+        if (isArrayType(type)) {
+            Type elementType = type.getTypeParameters().get(0);
+            PDataType baseType = PDataType.arrayBaseType(dataType);
+            PhoenixObjectReader elementReader = createPhoenixObjectReader(elementType);
+            return (block, position) -> {
+                Block arrayBlock = block.getObject(position, Block.class);
+                Object[] elements = new Object[arrayBlock.getPositionCount()];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = arrayBlock.isNull(i) ? null : elementReader.read(arrayBlock, i);
+                }
+                return dataType.toBytes(PArrayDataType.instantiatePhoenixArray(baseType, elements));
+            };
+        }
+        return (block, position) -> toBytes(column, toPhoenixObject(type, block, position));
+    }
+
+    private static byte[] toBytes(PColumn column, Object value)
+    {
+        PDataType dataType = column.getDataType();
+        // coerce the value to the column type, as binding it to an UPSERT would
+        byte[] bytes = dataType.toBytes(dataType.toObject(value, PDataType.fromLiteral(value)), column.getSortOrder());
+        if (dataType.isFixedWidth() && column.getMaxLength() != null && bytes.length < column.getMaxLength()) {
+            ImmutableBytesWritable padded = new ImmutableBytesWritable(bytes);
+            dataType.pad(padded, column.getMaxLength(), column.getSortOrder());
+            return padded.copyBytes();
+        }
+        return bytes;
+    }
+}
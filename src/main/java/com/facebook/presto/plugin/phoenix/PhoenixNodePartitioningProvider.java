@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.BucketFunction;
+import com.facebook.presto.spi.ConnectorSession;
+import com.facebook.presto.spi.ConnectorSplit;
+import com.facebook.presto.spi.Node;
+import com.facebook.presto.spi.NodeManager;
+import com.facebook.presto.spi.connector.ConnectorNodePartitioningProvider;
+import com.facebook.presto.spi.connector.ConnectorPartitionHandle;
+import com.facebook.presto.spi.connector.ConnectorPartitioningHandle;
+import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
+import com.facebook.presto.spi.type.Type;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+
+public class PhoenixNodePartitioningProvider
+        implements ConnectorNodePartitioningProvider
+{
+    private final NodeManager nodeManager;
+
+    @Inject
+    public PhoenixNodePartitioningProvider(NodeManager nodeManager)
+    {
+        this.nodeManager = requireNonNull(nodeManager, "nodeManager is null");
+    }
+
+    @Override
+    public Map<Integer, Node> getBucketToNode(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorPartitioningHandle partitioningHandle)
+    {
+        PhoenixPartitioningHandle handle = (PhoenixPartitioningHandle) partitioningHandle;
+
+        List<Node> nodes = new ArrayList<>(nodeManager.getRequiredWorkerNodes());
+        Collections.shuffle(nodes);
+
+        ImmutableMap.Builder<Integer, Node> bucketToNode = ImmutableMap.builder();
+        for (int bucket = 0; bucket < handle.getBucketCount(); bucket++) {
+            bucketToNode.put(bucket, nodes.get(bucket % nodes.size()));
+        }
+        return bucketToNode.build();
+    }
+
+    @Override
+    public ToIntFunction<ConnectorSplit> getSplitBucketFunction(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorPartitioningHandle partitioningHandle)
+    {
+        return split -> ((PhoenixSplit) split).getSaltBucket();
+    }
+
+    @Override
+    public BucketFunction getBucketFunction(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorPartitioningHandle partitioningHandle, List<Type> partitionChannelTypes, int bucketCount)
+    {
+        return new PhoenixBucketFunction((PhoenixPartitioningHandle) partitioningHandle, partitionChannelTypes);
+    }
+
+    @Override
+    public List<ConnectorPartitionHandle> listPartitionHandles(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorPartitioningHandle partitioningHandle)
+    {
+        PhoenixPartitioningHandle handle = (PhoenixPartitioningHandle) partitioningHandle;
+        return IntStream.range(0, handle.getBucketCount())
+                .mapToObj(PhoenixPartitionHandle::new)
+                .collect(toImmutableList());
+    }
+}
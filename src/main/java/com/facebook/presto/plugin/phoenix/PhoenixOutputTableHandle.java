@@ -24,6 +24,8 @@ import javax.annotation.Nullable;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.String.format;
@@ -38,6 +40,9 @@ public class PhoenixOutputTableHandle
     private final String tableName;
     private final List<String> columnNames;
     private final List<Type> columnTypes;
+    private final long tableTimestamp;
+    private final Optional<String> bulkLoadDirectory;
+    private final OptionalLong bulkLoadTimestamp;
 
     @JsonCreator
     public PhoenixOutputTableHandle(
@@ -46,7 +51,10 @@ public class PhoenixOutputTableHandle
             @JsonProperty("schemaName") @Nullable String schemaName,
             @JsonProperty("tableName") String tableName,
             @JsonProperty("columnNames") List<String> columnNames,
-            @JsonProperty("columnTypes") List<Type> columnTypes)
+            @JsonProperty("columnTypes") List<Type> columnTypes,
+            @JsonProperty("tableTimestamp") long tableTimestamp,
+            @JsonProperty("bulkLoadDirectory") Optional<String> bulkLoadDirectory,
+            @JsonProperty("bulkLoadTimestamp") OptionalLong bulkLoadTimestamp)
     {
         this.connectorId = requireNonNull(connectorId, "connectorId is null");
         this.catalogName = catalogName;
@@ -58,6 +66,10 @@ public class PhoenixOutputTableHandle
         checkArgument(columnNames.size() == columnTypes.size(), "columnNames and columnTypes sizes don't match");
         this.columnNames = ImmutableList.copyOf(columnNames);
         this.columnTypes = ImmutableList.copyOf(columnTypes);
+        this.tableTimestamp = tableTimestamp;
+        this.bulkLoadDirectory = requireNonNull(bulkLoadDirectory, "bulkLoadDirectory is null");
+        this.bulkLoadTimestamp = requireNonNull(bulkLoadTimestamp, "bulkLoadTimestamp is null");
+        checkArgument(bulkLoadDirectory.isPresent() == bulkLoadTimestamp.isPresent(), "bulkLoadDirectory and bulkLoadTimestamp must be set together");
     }
 
     @JsonProperty
@@ -98,6 +110,47 @@ public class PhoenixOutputTableHandle
         return columnTypes;
     }
 
+    /**
+     * Timestamp of the table metadata the write was planned with.
+     */
+    @JsonProperty
+    public long getTableTimestamp()
+    {
+        return tableTimestamp;
+    }
+
+    /**
+     * Directory the page sinks write HFiles to, if the rows are bulk loaded when the write finishes.
+     */
+    @JsonProperty
+    public Optional<String> getBulkLoadDirectory()
+    {
+        return bulkLoadDirectory;
+    }
+
+    /**
+     * Timestamp of the cells of the HFiles in the bulk load directory, the same for all page sinks of the write.
+     */
+    @JsonProperty
+    public OptionalLong getBulkLoadTimestamp()
+    {
+        return bulkLoadTimestamp;
+    }
+
+    public PhoenixOutputTableHandle withBulkLoadDirectory(String bulkLoadDirectory, long bulkLoadTimestamp)
+    {
+        return new PhoenixOutputTableHandle(
+                connectorId,
+                catalogName,
+                schemaName,
+                tableName,
+                columnNames,
+                columnTypes,
+                tableTimestamp,
+                Optional.of(bulkLoadDirectory),
+                OptionalLong.of(bulkLoadTimestamp));
+    }
+
     @Override
     public String toString()
     {
@@ -113,7 +166,10 @@ public class PhoenixOutputTableHandle
                 schemaName,
                 tableName,
                 columnNames,
-                columnTypes);
+                columnTypes,
+                tableTimestamp,
+                bulkLoadDirectory,
+                bulkLoadTimestamp);
     }
 
     @Override
@@ -131,6 +187,9 @@ public class PhoenixOutputTableHandle
                 Objects.equals(this.schemaName, other.schemaName) &&
                 Objects.equals(this.tableName, other.tableName) &&
                 Objects.equals(this.columnNames, other.columnNames) &&
-                Objects.equals(this.columnTypes, other.columnTypes);
+                Objects.equals(this.columnTypes, other.columnTypes) &&
+                this.tableTimestamp == other.tableTimestamp &&
+                Objects.equals(this.bulkLoadDirectory, other.bulkLoadDirectory) &&
+                Objects.equals(this.bulkLoadTimestamp, other.bulkLoadTimestamp);
     }
 }
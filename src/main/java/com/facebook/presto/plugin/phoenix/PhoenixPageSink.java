@@ -13,31 +13,51 @@
  */
 package com.facebook.presto.plugin.phoenix;
 
+import com.facebook.presto.plugin.phoenix.TypeUtils.PhoenixObjectReader;
 import com.facebook.presto.spi.ConnectorPageSink;
 import com.facebook.presto.spi.ConnectorSession;
 import com.facebook.presto.spi.Page;
 import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.block.DictionaryBlock;
+import com.facebook.presto.spi.block.RunLengthEncodedBlock;
 import com.facebook.presto.spi.type.DecimalType;
 import com.facebook.presto.spi.type.Type;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Shorts;
 import com.google.common.primitives.SignedBytes;
+import io.airlift.log.Logger;
 import io.airlift.slice.Slice;
 import org.apache.phoenix.jdbc.PhoenixConnection;
-import org.joda.time.DateTimeZone;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.types.PArrayDataType;
+import org.apache.phoenix.schema.types.PDataType;
 
-import java.sql.Array;
-import java.sql.Date;
+import javax.annotation.Nullable;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.SQLNonTransientException;
-import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static com.facebook.presto.plugin.phoenix.PhoenixClient.ROWKEY;
@@ -45,69 +65,136 @@ import static com.facebook.presto.plugin.phoenix.PhoenixClient.getFullTableName;
 import static com.facebook.presto.plugin.phoenix.PhoenixClient.toSqlType;
 import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
 import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_NON_TRANSIENT_ERROR;
+import static com.facebook.presto.plugin.phoenix.TableUtils.getPrimaryKeyColumns;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.createPhoenixObjectReader;
 import static com.facebook.presto.plugin.phoenix.TypeUtils.isArrayType;
-import static com.facebook.presto.spi.StandardErrorCode.NOT_SUPPORTED;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.toPhoenixObject;
+import static com.facebook.presto.spi.StandardErrorCode.NUMERIC_VALUE_OUT_OF_RANGE;
 import static com.facebook.presto.spi.type.BigintType.BIGINT;
 import static com.facebook.presto.spi.type.BooleanType.BOOLEAN;
 import static com.facebook.presto.spi.type.Chars.isCharType;
-import static com.facebook.presto.spi.type.DateType.DATE;
 import static com.facebook.presto.spi.type.Decimals.readBigDecimal;
 import static com.facebook.presto.spi.type.DoubleType.DOUBLE;
 import static com.facebook.presto.spi.type.IntegerType.INTEGER;
 import static com.facebook.presto.spi.type.RealType.REAL;
 import static com.facebook.presto.spi.type.SmallintType.SMALLINT;
-import static com.facebook.presto.spi.type.TimestampType.TIMESTAMP;
 import static com.facebook.presto.spi.type.TinyintType.TINYINT;
 import static com.facebook.presto.spi.type.VarbinaryType.VARBINARY;
 import static com.facebook.presto.spi.type.Varchars.isVarcharType;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static java.lang.Float.intBitsToFloat;
+import static java.lang.Math.addExact;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.Math.toIntExact;
+import static java.lang.String.format;
 import static java.util.Collections.nCopies;
+import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.CompletableFuture.completedFuture;
-import static java.util.concurrent.TimeUnit.DAYS;
-import static org.joda.time.chrono.ISOChronology.getInstanceUTC;
 
+/**
+ * Writes pages through a Phoenix UPSERT statement. Pages are collected into batches on the driver thread
+ * and bound and committed batch by batch in the background, one batch at a time on the sink's connection,
+ * while the next batch is being filled. {@link #appendPage} blocks once too many batches are in flight.
+ */
 public class PhoenixPageSink
         implements ConnectorPageSink
 {
+    private static final Logger log = Logger.get(PhoenixPageSink.class);
+
+    private final PhoenixConnectionLease lease;
     private final PhoenixConnection connection;
     private final PreparedStatement statement;
 
     private final List<String> columnNames;
     private final List<Type> columnTypes;
     private final List<String> dupKeyColumns;
-    private int batchSize;
+    private final List<ColumnParameter> columnParameters;
+    private final PhoenixRowkeyGenerator rowkeyGenerator;
+    private final PhoenixWriteRetryPolicy retryPolicy;
+    private final boolean mergeDuplicateKeys;
+    // the ON DUPLICATE KEY UPDATE increments, in statement order
+    private final List<ColumnParameter> incrementParameters;
+    // encodes the row keys batches are merged by, if they are
+    private final Optional<RowKeyEncoder> rowKeyEncoder;
+    private final int[] keyChannels;
+    private final List<Type> keyTypes;
+    private final int maxBatchRows;
+    private final long maxBatchBytes;
+    private final Executor commitExecutor;
+    private final int maxInFlightBatches;
+
+    private List<Page> batch = new ArrayList<>();
+    private int batchRows;
+    private long batchBytes;
+
+    // batches are chained on the previous commit, so they commit in order and stop at the first failure
+    private CompletableFuture<?> lastCommit = completedFuture(null);
+    private final Deque<CompletableFuture<?>> inFlightBatches = new ArrayDeque<>();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private volatile boolean aborted;
+    private boolean closed;
     private boolean hasRowkey;
 
-    public PhoenixPageSink(PhoenixOutputTableHandle handle, ConnectorSession session, PhoenixClient phoenixClient)
+    public PhoenixPageSink(PhoenixOutputTableHandle handle, ConnectorSession session, PhoenixClient phoenixClient, PhoenixRowkeyGenerator rowkeyGenerator, PhoenixWriteRetryPolicy retryPolicy, Executor commitExecutor, int maxInFlightBatches)
     {
+        this.rowkeyGenerator = requireNonNull(rowkeyGenerator, "rowkeyGenerator is null");
+        this.retryPolicy = requireNonNull(retryPolicy, "retryPolicy is null");
+        this.commitExecutor = requireNonNull(commitExecutor, "commitExecutor is null");
+        checkArgument(maxInFlightBatches > 0, "maxInFlightBatches must be greater than zero");
+        this.maxInFlightBatches = maxInFlightBatches;
         columnTypes = handle.getColumnTypes();
         columnNames = handle.getColumnNames();
 
         hasRowkey = ROWKEY.equalsIgnoreCase(columnNames.get(0));
+        maxBatchRows = PhoenixSessionProperties.getWriteBatchSize(session);
+        maxBatchBytes = PhoenixSessionProperties.getWriteBatchMaxSize(session).toBytes();
         List<String> duplicateKeyUpdateColumns = PhoenixSessionProperties.getDuplicateKeyUpdateColumns(session);
-        List<String> upsertColumns = PhoenixSessionProperties.getUpsertColumns(session);
-
-        for (String upsertColumn : upsertColumns) {
-            if (!columnNames.contains(upsertColumn)) {
-                throw new PrestoException(PHOENIX_ERROR, String.format("Upsert column name does not exist in target table: %s", upsertColumn));
-            }
-        }
 
         dupKeyColumns = columnNames.stream().filter(column -> duplicateKeyUpdateColumns.contains(column)).collect(Collectors.toList());
+        columnParameters = createColumnParameters();
+
+        incrementParameters = columnParameters.stream()
+                .filter(column -> column.getDupKeyParameter() > 0)
+                .sorted(Comparator.comparingInt(ColumnParameter::getDupKeyParameter))
+                .collect(toImmutableList());
+
+        // generated row keys never repeat
+        mergeDuplicateKeys = !incrementParameters.isEmpty() && !hasRowkey &&
+                incrementParameters.stream().allMatch(column -> isIncrementType(column.getType()));
+        if (mergeDuplicateKeys) {
+            PTable table = phoenixClient.getPTable(handle);
+            List<PColumn> keyColumns = getPrimaryKeyColumns(table);
+            rowKeyEncoder = Optional.of(RowKeyEncoder.create(table));
+            keyChannels = keyColumns.stream()
+                    .mapToInt(column -> PhoenixMutationEncoder.indexOfColumn(columnNames, column))
+                    .toArray();
+            keyTypes = Arrays.stream(keyChannels)
+                    .mapToObj(channel -> channel < 0 ? null : columnTypes.get(channel))
+                    .collect(Collectors.toList());
+        }
+        else {
+            rowKeyEncoder = Optional.empty();
+            keyChannels = new int[0];
+            keyTypes = ImmutableList.of();
+        }
 
         try {
-            connection = phoenixClient.getConnection();
-            connection.setAutoCommit(false);
+            lease = phoenixClient.leaseConnection(handle.getSchemaName(), handle.getTableName(), handle.getTableTimestamp());
         }
         catch (SQLException e) {
             throw new PrestoException(PHOENIX_ERROR, e);
         }
 
+        connection = lease.getConnection();
         try {
+            connection.setAutoCommit(false);
             statement = connection.prepareStatement(buildInsertSql(handle, phoenixClient));
         }
         catch (SQLException e) {
+            lease.close();
             throw new PrestoException(PHOENIX_ERROR, e);
         }
     }
@@ -153,158 +240,533 @@ public class PhoenixPageSink
     @Override
     public CompletableFuture<?> appendPage(Page page)
     {
-        int rowkeyParameter = 0;
-        if (hasRowkey) {
-            rowkeyParameter++;
+        checkCommitFailure();
+        if (page.getPositionCount() == 0) {
+            return getCommitCapacity();
         }
-        try {
-            for (int position = 0; position < page.getPositionCount(); position++) {
-                if (hasRowkey) {
-                    statement.setString(1, UUID.randomUUID().toString());
-                }
-                Object[] dupKeyValues = new Object[dupKeyColumns.size()];
-                int channel = 0;
-                for (; channel < page.getChannelCount(); channel++) {
-                    Block block = page.getBlock(channel);
-                    int columnPos = channel + rowkeyParameter;
-                    int parameter = columnPos + 1;
-                    Type type = columnTypes.get(columnPos);
-
-                    Object value = getObjectValue(type, block, position);
-
-                    if (value instanceof Array) {
-                        statement.setArray(parameter, (Array) value);
-                    }
-                    else {
-                        statement.setObject(parameter, value);
-
-                        int dupKeyPos = dupKeyColumns.indexOf(columnNames.get(columnPos));
-                        if (dupKeyPos > -1) {
-                            dupKeyValues[dupKeyPos] = value;
-                        }
-                    }
+        // the rows of a page are assumed to be of about the same size
+        long rowBytes = max(getBatchSizeInBytes(page) / page.getPositionCount(), 1);
+        int position = 0;
+        while (position < page.getPositionCount()) {
+            long rowsUntilFull = min(maxBatchRows - batchRows, (maxBatchBytes - batchBytes + rowBytes - 1) / rowBytes);
+            int rows = (int) max(min(rowsUntilFull, page.getPositionCount() - position), 1);
+            batch.add(position == 0 && rows == page.getPositionCount() ? page : page.getRegion(position, rows));
+            batchRows += rows;
+            batchBytes += rows * rowBytes;
+            position += rows;
+
+            if (batchRows >= maxBatchRows || batchBytes >= maxBatchBytes) {
+                submitBatch();
+            }
+        }
+        return getCommitCapacity();
+    }
+
+    /**
+     * Memory a page takes once it is in a batch: the page itself is retained until the batch is committed,
+     * and every row is bound to the statement with its values materialized.
+     */
+    private static long getBatchSizeInBytes(Page page)
+    {
+        long logicalSize = 0;
+        for (int channel = 0; channel < page.getChannelCount(); channel++) {
+            logicalSize += getLogicalSizeInBytes(page.getBlock(channel));
+        }
+        return max(logicalSize, page.getRetainedSizeInBytes());
+    }
+
+    /**
+     * Dictionary and run length encoded blocks are much smaller than the values they represent,
+     * so their values are counted once for every position referencing them.
+     */
+    private static long getLogicalSizeInBytes(Block block)
+    {
+        if (block instanceof RunLengthEncodedBlock) {
+            return getLogicalSizeInBytes(((RunLengthEncodedBlock) block).getValue()) * block.getPositionCount();
+        }
+        if (block instanceof DictionaryBlock) {
+            DictionaryBlock dictionaryBlock = (DictionaryBlock) block;
+            Block dictionary = dictionaryBlock.getDictionary();
+            long size = 0;
+            for (int position = 0; position < dictionaryBlock.getPositionCount(); position++) {
+                size += dictionary.getRegionSizeInBytes(dictionaryBlock.getId(position), 1);
+            }
+            return size;
+        }
+        return block.getSizeInBytes();
+    }
+
+    private List<ColumnParameter> createColumnParameters()
+    {
+        int rowkeyParameter = hasRowkey ? 1 : 0;
+        int columnCount = columnNames.size();
+        ImmutableList.Builder<ColumnParameter> parameters = ImmutableList.builder();
+        for (int columnPos = rowkeyParameter; columnPos < columnCount; columnPos++) {
+            Type type = columnTypes.get(columnPos);
+            int dupKeyPos = dupKeyColumns.indexOf(columnNames.get(columnPos));
+            ValueBinder binder = createBinder(type);
+            // arrays cannot be incremented, their increment is left null
+            ValueBinder dupKeyBinder = isArrayType(type) ? (statement, parameter, block, position) -> statement.setNull(parameter, Types.NULL) : binder;
+            parameters.add(new ColumnParameter(
+                    columnPos - rowkeyParameter,
+                    columnPos + 1,
+                    dupKeyPos > -1 ? columnCount + dupKeyPos + 1 : -1,
+                    type,
+                    binder,
+                    dupKeyBinder));
+        }
+        return parameters.build();
+    }
+
+    private void submitBatch()
+    {
+        List<Page> pages = batch;
+        long bytes = batchBytes;
+        batch = new ArrayList<>();
+        batchRows = 0;
+        batchBytes = 0;
+
+        inFlightBytes.addAndGet(bytes);
+        lastCommit = lastCommit.thenRunAsync(() -> commit(pages), commitExecutor);
+        // also runs when the batch is skipped because an earlier one failed
+        lastCommit.whenComplete((value, failure) -> inFlightBytes.addAndGet(-bytes));
+        inFlightBatches.add(lastCommit);
+    }
+
+    /**
+     * Binds the rows to the statement, sends them to Phoenix and commits them, releasing the client side
+     * mutation state. Runs on the commit executor, never concurrently with another batch of this sink.
+     * Plain UPSERTs are idempotent, so a batch that failed transiently is replayed as a whole.
+     */
+    private void commit(List<Page> pages)
+    {
+        if (aborted) {
+            return;
+        }
+        // fixed before the first attempt, so that a replay writes the same rows
+        List<KeyedRow> keyedRows = mergeDuplicateKeys ? mergeDuplicateKeys(encodeRowKeys(pages)) : null;
+        String[] rowkeys = hasRowkey ? generateRowkeys(pages) : null;
+        for (int attempt = 1; !aborted; attempt++) {
+            try {
+                bindRows(pages, keyedRows, rowkeys);
+                statement.executeBatch();
+                connection.commit();
+                return;
+            }
+            catch (SQLNonTransientException e) {
+                retryPolicy.failed();
+                throw new PrestoException(PHOENIX_NON_TRANSIENT_ERROR, e);
+            }
+            catch (SQLException e) {
+                // a replay could apply some of the increments twice
+                if (!dupKeyColumns.isEmpty()) {
+                    retryPolicy.failed();
+                    throw new PrestoException(PHOENIX_ERROR, e);
                 }
-                for (int i = 0; i < dupKeyValues.length; i++) {
-                    int parameter = channel + i + rowkeyParameter + 1;
-                    statement.setObject(parameter, dupKeyValues[i]);
+                discardMutations(e);
+                if (!retryPolicy.backOff(attempt, e)) {
+                    throw new PrestoException(PHOENIX_ERROR, e);
                 }
+            }
+        }
+    }
 
-                statement.addBatch();
-                batchSize++;
+    private String[] generateRowkeys(List<Page> pages)
+    {
+        String[] rowkeys = new String[pages.stream().mapToInt(Page::getPositionCount).sum()];
+        for (int i = 0; i < rowkeys.length; i++) {
+            rowkeys[i] = rowkeyGenerator.generate();
+        }
+        return rowkeys;
+    }
 
-                if (batchSize >= 1000) {
-                    statement.executeBatch();
-                    connection.commit();
-                    connection.setAutoCommit(false);
-                    batchSize = 0;
-                }
+    private void bindRows(List<Page> pages, @Nullable List<KeyedRow> keyedRows, @Nullable String[] rowkeys)
+            throws SQLException
+    {
+        if (keyedRows != null) {
+            for (KeyedRow row : keyedRows) {
+                bindRow(row.getPage(), row.getPosition(), null, row.getIncrements());
             }
+            return;
+        }
+        int row = 0;
+        for (Page page : pages) {
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                bindRow(page, position, rowkeys == null ? null : rowkeys[row], null);
+                row++;
+            }
+        }
+    }
+
+    /**
+     * Drops what the failed attempt left on the statement and the connection.
+     */
+    private void discardMutations(SQLException failure)
+    {
+        try {
+            statement.clearBatch();
+            connection.rollback();
         }
         catch (SQLException e) {
-            throw new PrestoException(PHOENIX_ERROR, e);
+            failure.addSuppressed(e);
+            retryPolicy.failed();
+            throw new PrestoException(PHOENIX_ERROR, failure);
+        }
+    }
+
+    /**
+     * @param rowkey the generated row key, if the table has one
+     * @param increments the merged ON DUPLICATE KEY UPDATE increments of the row, or null to bind those of the row itself
+     */
+    private void bindRow(Page page, int position, @Nullable String rowkey, @Nullable Object[] increments)
+            throws SQLException
+    {
+        if (rowkey != null) {
+            statement.setString(1, rowkey);
+        }
+        for (ColumnParameter column : columnParameters) {
+            column.bind(statement, page, position);
+        }
+        if (increments != null) {
+            for (int i = 0; i < increments.length; i++) {
+                ColumnParameter column = incrementParameters.get(i);
+                statement.setObject(column.getParameter(), increments[i]);
+                statement.setObject(column.getDupKeyParameter(), increments[i]);
+            }
+        }
+        statement.addBatch();
+    }
+
+    private List<KeyedRow> encodeRowKeys(List<Page> pages)
+    {
+        List<KeyedRow> rows = new ArrayList<>();
+        Object[] values = new Object[keyChannels.length];
+        for (Page page : pages) {
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                for (int i = 0; i < keyChannels.length; i++) {
+                    int channel = keyChannels[i];
+                    values[i] = channel < 0 ? null : toPhoenixObject(keyTypes.get(i), page.getBlock(channel), position);
+                }
+                rows.add(new KeyedRow(rowKeyEncoder.get().encode(values), page, position));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Merges the rows of each row key into the first of them, with the sums of their increments, so
+     * Phoenix applies one atomic increment per key. The other columns keep the values of the first row,
+     * which the increments of the later rows would not have changed either.
+     */
+    private List<KeyedRow> mergeDuplicateKeys(List<KeyedRow> rows)
+    {
+        Map<ByteBuffer, KeyedRow> merged = new LinkedHashMap<>();
+        for (KeyedRow row : rows) {
+            KeyedRow first = merged.putIfAbsent(ByteBuffer.wrap(row.getRowKey()), row);
+            if (first == null) {
+                continue;
+            }
+            if (first.getIncrements() == null) {
+                first.setIncrements(readIncrements(first));
+            }
+            Object[] increments = first.getIncrements();
+            for (int i = 0; i < increments.length; i++) {
+                ColumnParameter column = incrementParameters.get(i);
+                Object increment = toPhoenixObject(column.getType(), row.getPage().getBlock(column.getChannel()), row.getPosition());
+                increments[i] = addIncrement(column.getType(), increments[i], increment);
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private Object[] readIncrements(KeyedRow row)
+    {
+        Object[] increments = new Object[incrementParameters.size()];
+        for (int i = 0; i < increments.length; i++) {
+            ColumnParameter column = incrementParameters.get(i);
+            increments[i] = toPhoenixObject(column.getType(), row.getPage().getBlock(column.getChannel()), row.getPosition());
         }
-        return NOT_BLOCKED;
+        return increments;
     }
 
-    private Object getObjectValue(Type type, Block block, int position) throws SQLException
+    private static boolean isIncrementType(Type type)
     {
-        if (block.isNull(position)) {
+        return BIGINT.equals(type) || INTEGER.equals(type) || SMALLINT.equals(type) || TINYINT.equals(type) ||
+                DOUBLE.equals(type) || REAL.equals(type) || type instanceof DecimalType;
+    }
+
+    private static Object addIncrement(Type type, Object left, Object right)
+    {
+        // col = col + NULL is NULL, whichever row it comes from
+        if (left == null || right == null) {
             return null;
         }
+        if (type instanceof DecimalType) {
+            return ((BigDecimal) left).add((BigDecimal) right);
+        }
+        if (DOUBLE.equals(type)) {
+            return (double) left + (double) right;
+        }
+        if (REAL.equals(type)) {
+            return (float) left + (float) right;
+        }
+        // the sum is bound as the column type, like the increments it replaces
+        try {
+            long sum = addExact(((Number) left).longValue(), ((Number) right).longValue());
+            if (INTEGER.equals(type)) {
+                return toIntExact(sum);
+            }
+            if (SMALLINT.equals(type)) {
+                return Shorts.checkedCast(sum);
+            }
+            if (TINYINT.equals(type)) {
+                return SignedBytes.checkedCast(sum);
+            }
+            return sum;
+        }
+        catch (ArithmeticException | IllegalArgumentException e) {
+            throw new PrestoException(NUMERIC_VALUE_OUT_OF_RANGE, format("Sum of the ON DUPLICATE KEY UPDATE increments of a row is out of range for %s", type.getDisplayName()), e);
+        }
+    }
 
+    /**
+     * Returns a future that completes once fewer than the maximum number of batches are in flight.
+     * Batches commit in order, so that is when the oldest batches beyond the limit complete.
+     */
+    private CompletableFuture<?> getCommitCapacity()
+    {
+        while (!inFlightBatches.isEmpty() && inFlightBatches.peekFirst().isDone()) {
+            inFlightBatches.removeFirst();
+        }
+        if (inFlightBatches.size() < maxInFlightBatches) {
+            return NOT_BLOCKED;
+        }
+        Iterator<CompletableFuture<?>> iterator = inFlightBatches.iterator();
+        for (int i = 0; i < inFlightBatches.size() - maxInFlightBatches; i++) {
+            iterator.next();
+        }
+        // failures are reported by the next call to appendPage or finish
+        return iterator.next().handle((value, failure) -> null);
+    }
+
+    private void checkCommitFailure()
+    {
+        if (lastCommit.isCompletedExceptionally()) {
+            try {
+                lastCommit.join();
+            }
+            catch (CompletionException e) {
+                throwIfUnchecked(e.getCause());
+                throw new PrestoException(PHOENIX_ERROR, e.getCause());
+            }
+        }
+    }
+
+    @Override
+    public long getSystemMemoryUsage()
+    {
+        return batchBytes + inFlightBytes.get();
+    }
+
+    /**
+     * Phoenix keeps the object of every parameter setter, so values are bound as the objects {@link TypeUtils#toPhoenixObject} converts them to.
+     */
+    private static ValueBinder createBinder(Type type)
+    {
         if (BOOLEAN.equals(type)) {
-            return type.getBoolean(block, position);
+            return (statement, parameter, block, position) -> statement.setBoolean(parameter, type.getBoolean(block, position));
         }
         else if (BIGINT.equals(type)) {
-            return type.getLong(block, position);
+            return (statement, parameter, block, position) -> statement.setLong(parameter, type.getLong(block, position));
         }
         else if (INTEGER.equals(type)) {
-            return toIntExact(type.getLong(block, position));
+            return (statement, parameter, block, position) -> statement.setInt(parameter, toIntExact(type.getLong(block, position)));
         }
         else if (SMALLINT.equals(type)) {
-            return Shorts.checkedCast(type.getLong(block, position));
+            return (statement, parameter, block, position) -> statement.setShort(parameter, Shorts.checkedCast(type.getLong(block, position)));
         }
         else if (TINYINT.equals(type)) {
-            return SignedBytes.checkedCast(type.getLong(block, position));
+            return (statement, parameter, block, position) -> statement.setByte(parameter, SignedBytes.checkedCast(type.getLong(block, position)));
         }
         else if (DOUBLE.equals(type)) {
-            return type.getDouble(block, position);
+            return (statement, parameter, block, position) -> statement.setDouble(parameter, type.getDouble(block, position));
         }
         else if (REAL.equals(type)) {
-            return intBitsToFloat(toIntExact(type.getLong(block, position)));
+            return (statement, parameter, block, position) -> statement.setFloat(parameter, intBitsToFloat(toIntExact(type.getLong(block, position))));
         }
         else if (type instanceof DecimalType) {
-            return readBigDecimal((DecimalType) type, block, position);
+            return (statement, parameter, block, position) -> statement.setBigDecimal(parameter, readBigDecimal((DecimalType) type, block, position));
         }
         else if (isVarcharType(type) || isCharType(type)) {
-            return type.getSlice(block, position).toStringUtf8();
+            return (statement, parameter, block, position) -> statement.setString(parameter, type.getSlice(block, position).toStringUtf8());
         }
         else if (VARBINARY.equals(type)) {
-            return type.getSlice(block, position).getBytes();
-        }
-        else if (DATE.equals(type)) {
-            // convert to midnight in default time zone
-            long utcMillis = DAYS.toMillis(type.getLong(block, position));
-            long localMillis = getInstanceUTC().getZone().getMillisKeepLocal(DateTimeZone.getDefault(), utcMillis);
-            return new Date(localMillis);
-        }
-        else if (TIMESTAMP.equals(type)) {
-            long millisUtc = type.getLong(block, position);
-            return new Timestamp(millisUtc);
+            return (statement, parameter, block, position) -> statement.setBytes(parameter, type.getSlice(block, position).getBytes());
         }
         else if (isArrayType(type)) {
             Type elementType = type.getTypeParameters().get(0);
-
-            Block arrayBlock = block.getObject(position, Block.class);
-
-            Object[] elements = new Object[arrayBlock.getPositionCount()];
-            for (int i = 0; i < arrayBlock.getPositionCount(); i++) {
-                Object element = getObjectValue(elementType, arrayBlock, i);
-                elements[i] = element;
-            }
             String sqlType = toSqlType(elementType);
             int boundedPos = sqlType.indexOf('(');
-            if (boundedPos > -1) {
-                sqlType = sqlType.substring(0, boundedPos).trim();
-            }
-            return connection.createArrayOf(sqlType, elements);
-        }
-        else {
-            throw new PrestoException(NOT_SUPPORTED, "Unsupported column type: " + type.getDisplayName());
+            PDataType elementDataType = PDataType.fromSqlTypeName(boundedPos > -1 ? sqlType.substring(0, boundedPos).trim() : sqlType);
+            PhoenixObjectReader elementReader = createPhoenixObjectReader(elementType);
+            return (statement, parameter, block, position) -> {
+                Block arrayBlock = block.getObject(position, Block.class);
+                Object[] elements = new Object[arrayBlock.getPositionCount()];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = arrayBlock.isNull(i) ? null : elementReader.read(arrayBlock, i);
+                }
+                statement.setArray(parameter, PArrayDataType.instantiatePhoenixArray(elementDataType, elements));
+            };
         }
+        // dates and timestamps, which Phoenix takes as java.sql objects
+        PhoenixObjectReader reader = createPhoenixObjectReader(type);
+        return (statement, parameter, block, position) -> statement.setObject(parameter, reader.read(block, position));
     }
 
     @Override
     public CompletableFuture<Collection<Slice>> finish()
     {
-        // commit and close
-        try (PhoenixConnection connection = this.connection;
-                PreparedStatement statement = this.statement) {
-            if (batchSize > 0) {
-                statement.executeBatch();
-                connection.commit();
-            }
-        }
-        catch (SQLNonTransientException e) {
-            throw new PrestoException(PHOENIX_NON_TRANSIENT_ERROR, e);
-        }
-        catch (SQLException e) {
-            throw new PrestoException(PHOENIX_ERROR, e);
+        if (!batch.isEmpty()) {
+            submitBatch();
         }
-        // the committer does not need any additional info
-        return completedFuture(ImmutableList.of());
+        // commit and return the connection once the last batch is done, the committer does not need any additional info
+        return lastCommit
+                .whenComplete((value, failure) -> close(failure != null))
+                .<Collection<Slice>>thenApply(ignored -> ImmutableList.of());
     }
 
     @Override
     public void abort()
     {
-        // rollback and close
-        try (PhoenixConnection connection = this.connection;
+        aborted = true;
+        batch = new ArrayList<>();
+        batchRows = 0;
+        batchBytes = 0;
+        // the connection can only be rolled back once the batch being committed is done
+        lastCommit.handle((value, failure) -> null).join();
+        close(true);
+    }
+
+    private synchronized void close(boolean rollback)
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // rollback and return the connection
+        try (PhoenixConnectionLease lease = this.lease;
                 PreparedStatement statement = this.statement) {
-            connection.rollback();
+            if (rollback) {
+                connection.rollback();
+            }
         }
         catch (SQLException e) {
-            throw new PrestoException(PHOENIX_ERROR, e);
+            log.warn(e, "Failed to close Phoenix page sink");
+        }
+    }
+
+    private static class KeyedRow
+    {
+        private final byte[] rowKey;
+        private final Page page;
+        private final int position;
+        private Object[] increments;
+
+        public KeyedRow(byte[] rowKey, Page page, int position)
+        {
+            this.rowKey = rowKey;
+            this.page = page;
+            this.position = position;
+        }
+
+        public byte[] getRowKey()
+        {
+            return rowKey;
+        }
+
+        public Page getPage()
+        {
+            return page;
+        }
+
+        public int getPosition()
+        {
+            return position;
+        }
+
+        @Nullable
+        public Object[] getIncrements()
+        {
+            return increments;
+        }
+
+        public void setIncrements(Object[] increments)
+        {
+            this.increments = increments;
+        }
+    }
+
+    private interface ValueBinder
+    {
+        void bind(PreparedStatement statement, int parameter, Block block, int position)
+                throws SQLException;
+    }
+
+    private static class ColumnParameter
+    {
+        private final int channel;
+        private final int parameter;
+        // the parameter of the ON DUPLICATE KEY UPDATE increment, or -1
+        private final int dupKeyParameter;
+        private final Type type;
+        private final ValueBinder binder;
+        private final ValueBinder dupKeyBinder;
+
+        public ColumnParameter(int channel, int parameter, int dupKeyParameter, Type type, ValueBinder binder, ValueBinder dupKeyBinder)
+        {
+            this.channel = channel;
+            this.parameter = parameter;
+            this.dupKeyParameter = dupKeyParameter;
+            this.type = requireNonNull(type, "type is null");
+            this.binder = requireNonNull(binder, "binder is null");
+            this.dupKeyBinder = requireNonNull(dupKeyBinder, "dupKeyBinder is null");
+        }
+
+        public int getChannel()
+        {
+            return channel;
+        }
+
+        public int getParameter()
+        {
+            return parameter;
+        }
+
+        public int getDupKeyParameter()
+        {
+            return dupKeyParameter;
+        }
+
+        public Type getType()
+        {
+            return type;
+        }
+
+        public void bind(PreparedStatement statement, Page page, int position)
+                throws SQLException
+        {
+            Block block = page.getBlock(channel);
+            if (block.isNull(position)) {
+                statement.setNull(parameter, Types.NULL);
+                if (dupKeyParameter > 0) {
+                    statement.setNull(dupKeyParameter, Types.NULL);
+                }
+                return;
+            }
+            binder.bind(statement, parameter, block, position);
+            if (dupKeyParameter > 0) {
+                dupKeyBinder.bind(statement, dupKeyParameter, block, position);
+            }
         }
     }
 }
@@ -17,33 +17,84 @@ import com.facebook.presto.spi.ConnectorInsertTableHandle;
 import com.facebook.presto.spi.ConnectorOutputTableHandle;
 import com.facebook.presto.spi.ConnectorPageSink;
 import com.facebook.presto.spi.ConnectorSession;
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.connector.ConnectorPageSinkProvider;
 import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.phoenix.schema.PTable;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
+import java.util.concurrent.ExecutorService;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.getDuplicateKeyUpdateColumns;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.getUpsertColumns;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.getWriteBatchMaxSize;
+import static com.facebook.presto.plugin.phoenix.PhoenixSessionProperties.getWriteMode;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 
 public class PhoenixPageSinkProvider
         implements ConnectorPageSinkProvider
 {
     private final PhoenixClient phoenixClient;
+    private final ExecutorService commitExecutor;
+    private final int maxInFlightBatches;
+    private final long bulkLoadMaxBufferSize;
+    private final PhoenixRowkeyGenerator rowkeyGenerator;
+    private final PhoenixWriteRetryPolicy retryPolicy;
 
     @Inject
-    public PhoenixPageSinkProvider(PhoenixClient phoenixClient)
+    public PhoenixPageSinkProvider(PhoenixConnectorId connectorId, PhoenixClient phoenixClient, PhoenixConfig config, PhoenixWriteRetryPolicy retryPolicy)
     {
+        requireNonNull(connectorId, "connectorId is null");
         this.phoenixClient = requireNonNull(phoenixClient, "phoenixClient is null");
+        this.retryPolicy = requireNonNull(retryPolicy, "retryPolicy is null");
+        this.maxInFlightBatches = requireNonNull(config, "config is null").getWriteMaxInFlightBatches();
+        this.bulkLoadMaxBufferSize = config.getBulkLoadMaxBufferSize().toBytes();
+        this.rowkeyGenerator = config.getRowkeyGenerator();
+        this.commitExecutor = newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("phoenix-page-sink-" + connectorId + "-%s").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        commitExecutor.shutdownNow();
     }
 
     @Override
     public ConnectorPageSink createPageSink(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorOutputTableHandle outputTableHandle)
     {
-        return new PhoenixPageSink((PhoenixOutputTableHandle) outputTableHandle, session, phoenixClient);
+        return createPageSink(session, (PhoenixOutputTableHandle) outputTableHandle);
     }
 
     @Override
     public ConnectorPageSink createPageSink(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorInsertTableHandle insertTableHandle)
     {
-        return new PhoenixPageSink((PhoenixOutputTableHandle) insertTableHandle, session, phoenixClient);
+        return createPageSink(session, (PhoenixOutputTableHandle) insertTableHandle);
+    }
+
+    private ConnectorPageSink createPageSink(ConnectorSession session, PhoenixOutputTableHandle handle)
+    {
+        for (String upsertColumn : getUpsertColumns(session)) {
+            if (!handle.getColumnNames().contains(upsertColumn)) {
+                throw new PrestoException(PHOENIX_ERROR, String.format("Upsert column name does not exist in target table: %s", upsertColumn));
+            }
+        }
+
+        // the metadata only stages a bulk load for tables the encoder supports
+        if (handle.getBulkLoadDirectory().isPresent()) {
+            return new PhoenixBulkLoadPageSink(handle, phoenixClient.getPTable(handle), phoenixClient, rowkeyGenerator, bulkLoadMaxBufferSize);
+        }
+        // ON DUPLICATE KEY UPDATE is evaluated by Phoenix on the region servers
+        if (getWriteMode(session) == PhoenixWriteMode.DIRECT && getDuplicateKeyUpdateColumns(session).isEmpty()) {
+            PTable table = phoenixClient.getPTable(handle);
+            if (PhoenixMutationEncoder.isSupported(table, handle.getColumnNames())) {
+                return new PhoenixDirectPageSink(handle, table, phoenixClient, rowkeyGenerator, getWriteBatchMaxSize(session).toBytes());
+            }
+        }
+        return new PhoenixPageSink(handle, session, phoenixClient, rowkeyGenerator, retryPolicy, commitExecutor, maxInFlightBatches);
     }
 }
@@ -26,6 +26,7 @@ import com.facebook.presto.spi.type.Type;
 import io.airlift.slice.Slice;
 import org.apache.phoenix.jdbc.PhoenixResultSet;
 import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
 import org.joda.time.chrono.ISOChronology;
 
 import java.math.BigDecimal;
@@ -53,6 +54,7 @@ import static io.airlift.slice.Slices.wrappedBuffer;
 import static java.lang.Float.floatToRawIntBits;
 import static java.lang.reflect.Array.get;
 import static java.lang.reflect.Array.getLength;
+import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
 import static org.apache.hadoop.hbase.client.Result.getTotalSizeOfCells;
 import static org.joda.time.DateTimeZone.UTC;
@@ -68,6 +70,7 @@ public class PhoenixPageSource
     private final PageBuilder pageBuilder;
 
     private final PhoenixResultSet resultSet;
+    private final PhoenixConnectionLease lease;
 
     private boolean closed;
 
@@ -75,17 +78,31 @@ public class PhoenixPageSource
     private long nanoStart;
     private long nanoEnd;
 
-    public PhoenixPageSource(PhoenixClient phoenixClient, PhoenixSplit split, List<PhoenixColumnHandle> columns)
+    /**
+     * Reads the split with the leased connection, which is returned to the pool when the
+     * page source is closed.
+     */
+    public PhoenixPageSource(PhoenixClient phoenixClient, PhoenixConnectionLease lease, PhoenixSplit split, List<PhoenixColumnHandle> columns)
     {
         this.columnNames = columns.stream().map(PhoenixColumnHandle::getColumnName).collect(toList());
         this.columnTypes = columns.stream().map(PhoenixColumnHandle::getColumnType).collect(toList());
         this.pageBuilder = new PageBuilder(columnTypes);
+        this.lease = requireNonNull(lease, "lease is null");
         try {
-            this.resultSet = phoenixClient.getResultSet(split, columns);
+            if (phoenixClient.isStatementSplit(split)) {
+                this.resultSet = phoenixClient.getStatementResultSet(lease.getConnection(), split, columns);
+            }
+            else {
+                this.resultSet = phoenixClient.getResultSet(lease.getConnection(), split, columns);
+            }
         }
         catch (SQLException e) {
             throw handleSqlException(e);
         }
+        catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
     }
 
     @Override
@@ -126,7 +143,10 @@ public class PhoenixPageSource
                         close();
                         break;
                     }
-                    bytesRead += getTotalSizeOfCells(((ResultTuple) resultSet.getCurrentRow()).getResult());
+                    Tuple row = resultSet.getCurrentRow();
+                    if (row instanceof ResultTuple) {
+                        bytesRead += getTotalSizeOfCells(((ResultTuple) row).getResult());
+                    }
 
                     pageBuilder.declarePosition();
                     for (int column = 0; column < columnTypes.size(); column++) {
@@ -288,14 +308,14 @@ public class PhoenixPageSource
         }
         closed = true;
 
-        if (this.resultSet != null) {
-            try {
-                this.resultSet.close();
-            }
-            catch (SQLException e) {
-                throw new RuntimeException(e);
+        try (PhoenixConnectionLease ignored = lease) {
+            if (resultSet != null) {
+                resultSet.close();
             }
         }
+        catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
 
         nanoEnd = System.nanoTime();
     }
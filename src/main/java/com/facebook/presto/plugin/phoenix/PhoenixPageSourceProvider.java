@@ -17,14 +17,17 @@ import com.facebook.presto.spi.ColumnHandle;
 import com.facebook.presto.spi.ConnectorPageSource;
 import com.facebook.presto.spi.ConnectorSession;
 import com.facebook.presto.spi.ConnectorSplit;
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.connector.ConnectorPageSourceProvider;
 import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
 
 import javax.inject.Inject;
 
+import java.sql.SQLException;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
 import static java.util.Objects.requireNonNull;
 
 public class PhoenixPageSourceProvider
@@ -41,8 +44,17 @@ public class PhoenixPageSourceProvider
     @Override
     public ConnectorPageSource createPageSource(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorSplit split, List<ColumnHandle> columns)
     {
-        return new PhoenixPageSource(phoenixClient,
-                (PhoenixSplit) split,
-                columns.stream().map(column -> (PhoenixColumnHandle) column).collect(Collectors.toList()));
+        PhoenixSplit phoenixSplit = (PhoenixSplit) split;
+        List<PhoenixColumnHandle> phoenixColumns = columns.stream().map(column -> (PhoenixColumnHandle) column).collect(Collectors.toList());
+
+        PhoenixConnectionLease lease;
+        try {
+            lease = phoenixClient.leaseConnection(phoenixSplit.getSchemaName(), phoenixSplit.getTableName(), phoenixSplit.getTableTimestamp());
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+
+        return new PhoenixPageSource(phoenixClient, lease, phoenixSplit, phoenixColumns);
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.connector.ConnectorPartitionHandle;
+
+import java.util.Objects;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+public class PhoenixPartitionHandle
+        extends ConnectorPartitionHandle
+{
+    private final int bucket;
+
+    public PhoenixPartitionHandle(int bucket)
+    {
+        this.bucket = bucket;
+    }
+
+    public int getBucket()
+    {
+        return bucket;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+        PhoenixPartitionHandle o = (PhoenixPartitionHandle) obj;
+        return bucket == o.bucket;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(bucket);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("bucket", bucket)
+                .toString();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.connector.ConnectorPartitioningHandle;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Partitioning of a Phoenix table on its row key. For a salted table a row belongs to the
+ * bucket of its salt byte, which Phoenix derives from a hash of the full row key. For an
+ * unsalted table a row belongs to the bucket of the region its row key falls into, as
+ * delimited by the region split keys.
+ */
+public class PhoenixPartitioningHandle
+        implements ConnectorPartitioningHandle
+{
+    private final Optional<Integer> saltBuckets;
+    private final List<byte[]> splitKeys;
+    private final List<PhoenixKeyColumn> keyColumns;
+    private final boolean rowKeyOrderOptimizable;
+
+    @JsonCreator
+    public PhoenixPartitioningHandle(
+            @JsonProperty("saltBuckets") Optional<Integer> saltBuckets,
+            @JsonProperty("splitKeys") List<byte[]> splitKeys,
+            @JsonProperty("keyColumns") List<PhoenixKeyColumn> keyColumns,
+            @JsonProperty("rowKeyOrderOptimizable") boolean rowKeyOrderOptimizable)
+    {
+        this.saltBuckets = requireNonNull(saltBuckets, "saltBuckets is null");
+        this.splitKeys = ImmutableList.copyOf(requireNonNull(splitKeys, "splitKeys is null"));
+        checkArgument(saltBuckets.map(buckets -> buckets > 0).orElse(true), "saltBuckets must be greater than zero");
+        checkArgument(!saltBuckets.isPresent() || splitKeys.isEmpty(), "salted tables are partitioned on salt buckets, not on split keys");
+        this.keyColumns = ImmutableList.copyOf(requireNonNull(keyColumns, "keyColumns is null"));
+        this.rowKeyOrderOptimizable = rowKeyOrderOptimizable;
+    }
+
+    public static PhoenixPartitioningHandle saltBucketPartitioning(int saltBuckets, List<PhoenixKeyColumn> keyColumns, boolean rowKeyOrderOptimizable)
+    {
+        return new PhoenixPartitioningHandle(Optional.of(saltBuckets), ImmutableList.of(), keyColumns, rowKeyOrderOptimizable);
+    }
+
+    /**
+     * @param splitKeys sorted start keys of all regions but the first one
+     */
+    public static PhoenixPartitioningHandle regionPartitioning(List<byte[]> splitKeys, List<PhoenixKeyColumn> keyColumns, boolean rowKeyOrderOptimizable)
+    {
+        return new PhoenixPartitioningHandle(Optional.empty(), splitKeys, keyColumns, rowKeyOrderOptimizable);
+    }
+
+    @JsonProperty
+    public Optional<Integer> getSaltBuckets()
+    {
+        return saltBuckets;
+    }
+
+    @JsonProperty
+    public List<byte[]> getSplitKeys()
+    {
+        return splitKeys;
+    }
+
+    @JsonProperty
+    public List<PhoenixKeyColumn> getKeyColumns()
+    {
+        return keyColumns;
+    }
+
+    @JsonProperty
+    public boolean isRowKeyOrderOptimizable()
+    {
+        return rowKeyOrderOptimizable;
+    }
+
+    public int getBucketCount()
+    {
+        return saltBuckets.orElse(splitKeys.size() + 1);
+    }
+
+    public RowKeyEncoder createRowKeyEncoder()
+    {
+        return new RowKeyEncoder(keyColumns, rowKeyOrderOptimizable, saltBuckets);
+    }
+
+    public int getBucket(byte[] rowKey)
+    {
+        if (saltBuckets.isPresent()) {
+            return RowKeyEncoder.getSaltBucket(rowKey);
+        }
+        // a row key equal to a split key starts the region of that key
+        int index = Collections.binarySearch(splitKeys, rowKey, Bytes.BYTES_COMPARATOR);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+        PhoenixPartitioningHandle o = (PhoenixPartitioningHandle) obj;
+        return Objects.equals(this.saltBuckets, o.saltBuckets) &&
+                Arrays.deepEquals(this.splitKeys.toArray(), o.splitKeys.toArray()) &&
+                this.rowKeyOrderOptimizable == o.rowKeyOrderOptimizable &&
+                Objects.equals(this.keyColumns, o.keyColumns);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(saltBuckets, Arrays.deepHashCode(splitKeys.toArray()), keyColumns, rowKeyOrderOptimizable);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("saltBuckets", saltBuckets.orElse(null))
+                .add("regions", saltBuckets.isPresent() ? null : splitKeys.size() + 1)
+                .omitNullValues()
+                .add("keyColumns", keyColumns)
+                .toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * How values of the synthetic {@link PhoenixClient#ROWKEY} column are generated.
+ */
+public enum PhoenixRowkeyGenerator
+{
+    /**
+     * Random UUIDs, 36 characters. All writers share one secure random generator. The default, so
+     * existing tables keep getting keys of the same format.
+     */
+    UUID {
+        @Override
+        public String generate()
+        {
+            return java.util.UUID.randomUUID().toString();
+        }
+    },
+    /**
+     * 120 random bits from a per-thread generator, 20 characters.
+     */
+    RANDOM {
+        @Override
+        public String generate()
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            char[] key = new char[20];
+            encode(key, 0, random.nextLong(), 10);
+            encode(key, 10, random.nextLong(), 10);
+            return new String(key);
+        }
+    },
+    /**
+     * A per-thread prefix followed by the current time and 60 random bits, 19 characters. The keys of
+     * a writer thread are ascending, while the prefixes spread the writers over up to 64 key ranges.
+     * Writers still append to the end of their key range, so unsalted tables need enough regions.
+     */
+    TIME_ORDERED {
+        @Override
+        public String generate()
+        {
+            char[] key = new char[19];
+            key[0] = PREFIX.get();
+            encode(key, 1, System.currentTimeMillis(), 8);
+            encode(key, 9, ThreadLocalRandom.current().nextLong(), 10);
+            return new String(key);
+        }
+    };
+
+    // 64 characters in ascending ASCII order, so encoded keys sort like the bits they encode
+    private static final char[] DIGITS = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<Character> PREFIX = ThreadLocal.withInitial(() -> DIGITS[ThreadLocalRandom.current().nextInt(DIGITS.length)]);
+
+    public abstract String generate();
+
+    /**
+     * Returns the keys that split the generated keys into the given number of ranges of about the
+     * same size. {@link #TIME_ORDERED} keys are only uniform in their first character, so they are
+     * split into at most 64 ranges.
+     */
+    public List<String> getSplitPoints(int ranges)
+    {
+        checkArgument(ranges > 0, "ranges must be greater than 0");
+        char[] digits = this == UUID ? HEX_DIGITS : DIGITS;
+        if (this == TIME_ORDERED) {
+            ranges = Math.min(ranges, digits.length);
+        }
+
+        int length = 1;
+        long keySpace = digits.length;
+        while (keySpace < ranges) {
+            length++;
+            keySpace *= digits.length;
+        }
+
+        ImmutableList.Builder<String> splitPoints = ImmutableList.builder();
+        for (int i = 1; i < ranges; i++) {
+            long value = keySpace * i / ranges;
+            char[] key = new char[length];
+            for (int j = length - 1; j >= 0; j--) {
+                key[j] = digits[(int) (value % digits.length)];
+                value /= digits.length;
+            }
+            splitPoints.add(new String(key));
+        }
+        return splitPoints.build();
+    }
+
+    /**
+     * Writes the low {@code 6 * digits} bits of the value into the key, most significant first.
+     */
+    private static void encode(char[] key, int offset, long value, int digits)
+    {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            key[i] = DIGITS[(int) (value & 0x3F)];
+            value >>>= 6;
+        }
+    }
+}
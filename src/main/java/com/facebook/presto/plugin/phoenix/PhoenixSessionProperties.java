@@ -14,15 +14,22 @@
 package com.facebook.presto.plugin.phoenix;
 
 import com.facebook.presto.spi.ConnectorSession;
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.session.PropertyMetadata;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
 
 import javax.inject.Inject;
 
 import java.util.List;
 
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_SESSION_PROPERTY;
+import static com.facebook.presto.spi.session.PropertyMetadata.booleanProperty;
 import static com.facebook.presto.spi.session.PropertyMetadata.stringProperty;
+import static com.facebook.presto.spi.type.IntegerType.INTEGER;
+import static com.facebook.presto.spi.type.VarcharType.createUnboundedVarcharType;
+import static java.lang.String.format;
 import static java.util.Locale.ENGLISH;
 import static java.util.Objects.requireNonNull;
 
@@ -42,11 +49,20 @@ public final class PhoenixSessionProperties
     private static final String UPSERT_COLUMNS = "upsert_columns";
     private static final Splitter UPSERT_COLUMNS_SPLITTER = Splitter.on(";").trimResults();
 
+    private static final String BUCKET_EXECUTION_ENABLED = "bucket_execution_enabled";
+    private static final String WRITE_PARTITIONING_ENABLED = "write_partitioning_enabled";
+    private static final String WRITE_BATCH_SIZE = "write_batch_size";
+    private static final String WRITE_BATCH_MAX_SIZE = "write_batch_max_size";
+    private static final String WRITE_MODE = "write_mode";
+    private static final String FAST_LOAD = "fast_load";
+    private static final String FAST_LOAD_ASYNC_INDEX_REBUILD = "fast_load_async_index_rebuild";
+
     private final List<PropertyMetadata<?>> sessionProperties;
 
     @Inject
-    public PhoenixSessionProperties()
+    public PhoenixSessionProperties(PhoenixConfig config)
     {
+        requireNonNull(config, "config is null");
         sessionProperties = ImmutableList.of(
                 stringProperty(
                         DUPLICATE_KEY_UPDATE_COLUMNS,
@@ -57,6 +73,62 @@ public final class PhoenixSessionProperties
                         UPSERT_COLUMNS,
                         "A comma-delimited list of Presto columns that the row will be updated.",
                         null,
+                        false),
+                booleanProperty(
+                        BUCKET_EXECUTION_ENABLED,
+                        "Expose the salt buckets of salted tables as table partitioning",
+                        true,
+                        false),
+                booleanProperty(
+                        WRITE_PARTITIONING_ENABLED,
+                        "Route the rows of each salt bucket or region to a single writer",
+                        true,
+                        false),
+                new PropertyMetadata<>(
+                        WRITE_BATCH_SIZE,
+                        "Maximum number of rows a page sink buffers before it sends them to Phoenix",
+                        INTEGER,
+                        Integer.class,
+                        config.getWriteBatchSize(),
+                        false,
+                        value -> {
+                            int batchSize = ((Number) value).intValue();
+                            if (batchSize < 1) {
+                                throw new PrestoException(INVALID_SESSION_PROPERTY, format("%s must be greater than 0: %s", WRITE_BATCH_SIZE, batchSize));
+                            }
+                            return batchSize;
+                        },
+                        value -> value),
+                dataSizeSessionProperty(
+                        WRITE_BATCH_MAX_SIZE,
+                        "Maximum size of the rows a page sink buffers before it sends them to Phoenix",
+                        config.getWriteBatchMaxSize(),
+                        false),
+                new PropertyMetadata<>(
+                        WRITE_MODE,
+                        "How rows are written to Phoenix tables: JDBC, DIRECT or BULK_LOAD",
+                        createUnboundedVarcharType(),
+                        PhoenixWriteMode.class,
+                        config.getWriteMode(),
+                        false,
+                        value -> {
+                            try {
+                                return PhoenixWriteMode.valueOf(((String) value).toUpperCase(ENGLISH));
+                            }
+                            catch (IllegalArgumentException e) {
+                                throw new PrestoException(INVALID_SESSION_PROPERTY, format("Invalid %s: %s", WRITE_MODE, value));
+                            }
+                        },
+                        PhoenixWriteMode::name),
+                booleanProperty(
+                        FAST_LOAD,
+                        "Disable the WAL and the indexes of the target table while inserting, and flush it and rebuild the indexes afterwards",
+                        false,
+                        false),
+                booleanProperty(
+                        FAST_LOAD_ASYNC_INDEX_REBUILD,
+                        "Leave the indexes disabled by a fast load to the Phoenix IndexTool to rebuild, they are not used until it has run",
+                        false,
                         false));
     }
 
@@ -86,4 +158,52 @@ public final class PhoenixSessionProperties
         }
         return ImmutableList.copyOf(UPSERT_COLUMNS_SPLITTER.split(value.toLowerCase(ENGLISH)));
     }
+
+    public static boolean isBucketExecutionEnabled(ConnectorSession session)
+    {
+        return session.getProperty(BUCKET_EXECUTION_ENABLED, Boolean.class);
+    }
+
+    public static boolean isWritePartitioningEnabled(ConnectorSession session)
+    {
+        return session.getProperty(WRITE_PARTITIONING_ENABLED, Boolean.class);
+    }
+
+    public static int getWriteBatchSize(ConnectorSession session)
+    {
+        return session.getProperty(WRITE_BATCH_SIZE, Integer.class);
+    }
+
+    public static DataSize getWriteBatchMaxSize(ConnectorSession session)
+    {
+        return session.getProperty(WRITE_BATCH_MAX_SIZE, DataSize.class);
+    }
+
+    public static PhoenixWriteMode getWriteMode(ConnectorSession session)
+    {
+        return session.getProperty(WRITE_MODE, PhoenixWriteMode.class);
+    }
+
+    public static boolean isFastLoad(ConnectorSession session)
+    {
+        return session.getProperty(FAST_LOAD, Boolean.class);
+    }
+
+    public static boolean isFastLoadAsyncIndexRebuild(ConnectorSession session)
+    {
+        return session.getProperty(FAST_LOAD_ASYNC_INDEX_REBUILD, Boolean.class);
+    }
+
+    private static PropertyMetadata<DataSize> dataSizeSessionProperty(String name, String description, DataSize defaultValue, boolean hidden)
+    {
+        return new PropertyMetadata<>(
+                name,
+                description,
+                createUnboundedVarcharType(),
+                DataSize.class,
+                defaultValue,
+                hidden,
+                value -> DataSize.valueOf((String) value),
+                DataSize::toString);
+    }
 }
@@ -19,6 +19,7 @@ import com.facebook.presto.spi.HostAddress;
 import com.facebook.presto.spi.predicate.TupleDomain;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.apache.phoenix.query.KeyRange;
 
@@ -41,6 +42,8 @@ public class PhoenixSplit
     private final String startRow;
     private final String stopRow;
     private final List<HostAddress> addresses;
+    private final List<TupleDomain<ColumnHandle>> lookupKeys;
+    private final long tableTimestamp;
 
     public PhoenixSplit(
             String connectorId,
@@ -49,7 +52,9 @@ public class PhoenixSplit
             String tableName,
             TupleDomain<ColumnHandle> tupleDomain,
             KeyRange split,
-            List<HostAddress> addresses)
+            List<HostAddress> addresses,
+            List<TupleDomain<ColumnHandle>> lookupKeys,
+            long tableTimestamp)
     {
         this.connectorId = requireNonNull(connectorId, "connector id is null");
         this.catalogName = catalogName;
@@ -59,6 +64,8 @@ public class PhoenixSplit
         this.startRow = Base64.getEncoder().encodeToString(split.getLowerRange());
         this.stopRow = Base64.getEncoder().encodeToString(split.getUpperRange());
         this.addresses = addresses;
+        this.lookupKeys = ImmutableList.copyOf(requireNonNull(lookupKeys, "lookupKeys is null"));
+        this.tableTimestamp = tableTimestamp;
     }
 
     @JsonCreator
@@ -70,7 +77,9 @@ public class PhoenixSplit
             @JsonProperty("tupleDomain") TupleDomain<ColumnHandle> tupleDomain,
             @JsonProperty("startRow") String startRow,
             @JsonProperty("stopRow") String stopRow,
-            @JsonProperty("addresses") List<HostAddress> addresses)
+            @JsonProperty("addresses") List<HostAddress> addresses,
+            @JsonProperty("lookupKeys") List<TupleDomain<ColumnHandle>> lookupKeys,
+            @JsonProperty("tableTimestamp") long tableTimestamp)
     {
         this.connectorId = requireNonNull(connectorId, "connector id is null");
         this.catalogName = catalogName;
@@ -80,6 +89,8 @@ public class PhoenixSplit
         this.startRow = startRow;
         this.stopRow = stopRow;
         this.addresses = addresses;
+        this.lookupKeys = ImmutableList.copyOf(requireNonNull(lookupKeys, "lookupKeys is null"));
+        this.tableTimestamp = tableTimestamp;
     }
 
     @JsonProperty
@@ -133,6 +144,31 @@ public class PhoenixSplit
         return addresses;
     }
 
+    /**
+     * Fully specified primary keys read by a point lookup split, all located in the same region.
+     * Empty for splits scanning a key range.
+     */
+    @JsonProperty
+    public List<TupleDomain<ColumnHandle>> getLookupKeys()
+    {
+        return lookupKeys;
+    }
+
+    /**
+     * Timestamp of the table metadata the split was planned with, used by workers to detect a stale
+     * cached PTable. {@link PhoenixClient#UNKNOWN_TABLE_TIMESTAMP} for query tables.
+     */
+    @JsonProperty
+    public long getTableTimestamp()
+    {
+        return tableTimestamp;
+    }
+
+    public boolean isPointLookup()
+    {
+        return !lookupKeys.isEmpty();
+    }
+
     public KeyRange getKeyRange()
     {
         byte[] byteStartRow = Base64.getDecoder().decode(startRow);
@@ -140,6 +176,15 @@ public class PhoenixSplit
         return KeyRange.getKeyRange(byteStartRow, byteStopRow);
     }
 
+    /**
+     * Salt bucket of the rows in this split. Phoenix never lets a scan of a salted table
+     * cross a bucket boundary, so the leading byte of the start row identifies the bucket.
+     */
+    public int getSaltBucket()
+    {
+        return RowKeyEncoder.getSaltBucket(Base64.getDecoder().decode(startRow));
+    }
+
     @Override
     public boolean isRemotelyAccessible()
     {
@@ -155,6 +200,7 @@ public class PhoenixSplit
                 .put("table", tableName)
                 .put("startRow", startRow)
                 .put("stopRow", stopRow)
+                .put("lookupKeys", lookupKeys.size())
                 .build();
     }
 
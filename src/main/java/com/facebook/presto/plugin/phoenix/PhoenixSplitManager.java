@@ -16,11 +16,15 @@ package com.facebook.presto.plugin.phoenix;
 import com.facebook.presto.spi.ConnectorSession;
 import com.facebook.presto.spi.ConnectorSplitSource;
 import com.facebook.presto.spi.ConnectorTableLayoutHandle;
+import com.facebook.presto.spi.FixedSplitSource;
 import com.facebook.presto.spi.connector.ConnectorSplitManager;
 import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
 
 import javax.inject.Inject;
 
+import java.util.List;
+
+import static com.facebook.presto.spi.connector.ConnectorSplitManager.SplitSchedulingStrategy.GROUPED_SCHEDULING;
 import static java.util.Objects.requireNonNull;
 
 public class PhoenixSplitManager
@@ -38,6 +42,10 @@ public class PhoenixSplitManager
     public ConnectorSplitSource getSplits(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorTableLayoutHandle layout, SplitSchedulingStrategy splitSchedulingStrategy)
     {
         PhoenixTableLayoutHandle layoutHandle = (PhoenixTableLayoutHandle) layout;
-        return phoenixClient.getSplits(layoutHandle);
+        List<PhoenixSplit> splits = phoenixClient.getSplits(layoutHandle);
+        if (splitSchedulingStrategy == GROUPED_SCHEDULING) {
+            return new PhoenixBucketSplitSource(splits);
+        }
+        return new FixedSplitSource(splits);
     }
 }
@@ -0,0 +1,611 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.ColumnMetadata;
+import com.facebook.presto.spi.ConnectorTableMetadata;
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.SchemaTableName;
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.statistics.ColumnStatisticMetadata;
+import com.facebook.presto.spi.statistics.ColumnStatisticType;
+import com.facebook.presto.spi.statistics.ColumnStatistics;
+import com.facebook.presto.spi.statistics.ComputedStatistics;
+import com.facebook.presto.spi.statistics.DoubleRange;
+import com.facebook.presto.spi.statistics.Estimate;
+import com.facebook.presto.spi.statistics.TableStatistics;
+import com.facebook.presto.spi.statistics.TableStatisticsMetadata;
+import com.facebook.presto.spi.type.DecimalType;
+import com.facebook.presto.spi.type.Type;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.log.Logger;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.util.RegionSizeCalculator;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.TableNotFoundException;
+import org.apache.phoenix.schema.types.PDataType;
+
+import javax.inject.Inject;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixClient.getPTable;
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static com.facebook.presto.plugin.phoenix.TableUtils.getPrimaryKeyColumns;
+import static com.facebook.presto.plugin.phoenix.TableUtils.isQueryTable;
+import static com.facebook.presto.plugin.phoenix.TableUtils.normalizeTableName;
+import static com.facebook.presto.plugin.phoenix.TypeUtils.isArrayType;
+import static com.facebook.presto.spi.statistics.ColumnStatisticType.MAX_VALUE;
+import static com.facebook.presto.spi.statistics.ColumnStatisticType.MIN_VALUE;
+import static com.facebook.presto.spi.statistics.ColumnStatisticType.NUMBER_OF_DISTINCT_VALUES;
+import static com.facebook.presto.spi.statistics.ColumnStatisticType.NUMBER_OF_NON_NULL_VALUES;
+import static com.facebook.presto.spi.statistics.TableStatisticType.ROW_COUNT;
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+import static com.facebook.presto.spi.type.DateType.DATE;
+import static com.facebook.presto.spi.type.Decimals.decodeUnscaledValue;
+import static com.facebook.presto.spi.type.DoubleType.DOUBLE;
+import static com.facebook.presto.spi.type.IntegerType.INTEGER;
+import static com.facebook.presto.spi.type.RealType.REAL;
+import static com.facebook.presto.spi.type.SmallintType.SMALLINT;
+import static com.facebook.presto.spi.type.TimestampType.TIMESTAMP;
+import static com.facebook.presto.spi.type.TinyintType.TINYINT;
+import static java.lang.Float.intBitsToFloat;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Locale.ENGLISH;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Estimates table statistics for the cost based optimizer from the guideposts Phoenix collects
+ * in SYSTEM.STATS, falling back to the store file sizes of the HBase regions. Column statistics
+ * computed by Presto while writing are kept in the PRESTO_STATISTICS table.
+ */
+public class PhoenixStatisticsProvider
+{
+    private static final Logger log = Logger.get(PhoenixStatisticsProvider.class);
+
+    private static final String GUIDEPOSTS_QUERY = "" +
+            "SELECT COLUMN_FAMILY, GUIDE_POSTS_ROW_COUNT " +
+            "FROM SYSTEM.STATS " +
+            "WHERE PHYSICAL_NAME = ?";
+
+    private static final String STATISTICS_TABLE = "PRESTO_STATISTICS";
+    private static final String TABLE_ROW = "*";
+
+    private static final String CREATE_STATISTICS_TABLE = "" +
+            "CREATE TABLE IF NOT EXISTS " + STATISTICS_TABLE + " (" +
+            "TABLE_SCHEM VARCHAR NOT NULL, " +
+            "TABLE_NAME VARCHAR NOT NULL, " +
+            "COLUMN_NAME VARCHAR NOT NULL, " +
+            "ROW_COUNT BIGINT, " +
+            "NON_NULL_COUNT BIGINT, " +
+            "DISTINCT_COUNT BIGINT, " +
+            "MIN_VALUE DOUBLE, " +
+            "MAX_VALUE DOUBLE " +
+            "CONSTRAINT PK PRIMARY KEY (TABLE_SCHEM, TABLE_NAME, COLUMN_NAME))";
+
+    // assumed size of values of variable width columns without a maximum length
+    private static final int VARIABLE_WIDTH_VALUE_SIZE = 16;
+    // size of a KeyValue besides its row key and value: lengths, family, qualifier, timestamp and type
+    private static final int KEY_VALUE_OVERHEAD = 24;
+
+    private final PhoenixClient phoenixClient;
+    private final boolean collectColumnStatisticsOnWrite;
+    private final LoadingCache<SchemaTableName, Map<String, StoredStatistics>> storedStatistics;
+
+    @Inject
+    public PhoenixStatisticsProvider(PhoenixClient phoenixClient, PhoenixMetadataConfig config)
+    {
+        this.phoenixClient = requireNonNull(phoenixClient, "phoenixClient is null");
+        requireNonNull(config, "config is null");
+        this.collectColumnStatisticsOnWrite = config.isCollectColumnStatisticsOnWrite();
+        this.storedStatistics = CacheBuilder.newBuilder()
+                .expireAfterWrite(config.getStatisticsCacheTtl().toMillis(), MILLISECONDS)
+                .build(CacheLoader.from(this::loadStoredStatistics));
+    }
+
+    public TableStatistics getTableStatistics(PhoenixTableHandle handle)
+    {
+        if (isQueryTable(handle.getTableName())) {
+            return TableStatistics.empty();
+        }
+
+        try (PhoenixConnectionLease lease = phoenixClient.leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            PTable table = getPTable(connection, handle);
+            Optional<Guideposts> guideposts = getGuideposts(connection, table);
+
+            Map<String, StoredStatistics> stored = storedStatistics.getUnchecked(getStatisticsKey(handle.getSchemaTableName()));
+            Optional<StoredStatistics> storedTable = Optional.ofNullable(stored.get(TABLE_ROW));
+
+            OptionalDouble rowCount;
+            if (guideposts.isPresent()) {
+                rowCount = OptionalDouble.of(guideposts.get().getRowCount());
+            }
+            else if (storedTable.isPresent() && storedTable.get().getRowCount().isPresent()) {
+                rowCount = OptionalDouble.of(storedTable.get().getRowCount().getAsLong());
+            }
+            else {
+                rowCount = estimateRowCount(connection, table);
+            }
+            if (!rowCount.isPresent()) {
+                return TableStatistics.empty();
+            }
+
+            TableStatistics.Builder statistics = TableStatistics.builder()
+                    .setRowCount(Estimate.of(rowCount.getAsDouble()));
+
+            List<PColumn> pkColumns = getPrimaryKeyColumns(table);
+            for (PhoenixColumnHandle column : phoenixClient.getColumns(handle, false)) {
+                ColumnStatistics.Builder columnStatistics = ColumnStatistics.builder();
+
+                int pkPosition = getPrimaryKeyPosition(pkColumns, column.getColumnName());
+                if (pkPosition == 0 || (pkPosition > 0 && !pkColumns.get(pkPosition).isNullable())) {
+                    columnStatistics.setNullsFraction(Estimate.of(0));
+                }
+                if (pkPosition == 0 && pkColumns.size() == 1) {
+                    columnStatistics.setDistinctValuesCount(Estimate.of(rowCount.getAsDouble()));
+                }
+
+                StoredStatistics storedColumn = stored.get(column.getColumnName().toLowerCase(ENGLISH));
+                if (storedColumn != null) {
+                    if (pkPosition < 0 && storedColumn.getNonNullCount().isPresent() && storedTable.isPresent() && storedTable.get().getRowCount().orElse(0) > 0) {
+                        double nonNullFraction = (double) storedColumn.getNonNullCount().getAsLong() / storedTable.get().getRowCount().getAsLong();
+                        columnStatistics.setNullsFraction(Estimate.of(max(0, 1 - nonNullFraction)));
+                    }
+                    if (!(pkPosition == 0 && pkColumns.size() == 1) && storedColumn.getDistinctCount().isPresent()) {
+                        columnStatistics.setDistinctValuesCount(Estimate.of(storedColumn.getDistinctCount().getAsLong()));
+                    }
+                    storedColumn.getRange().ifPresent(columnStatistics::setRange);
+                }
+
+                statistics.setColumnStatistics(column, columnStatistics.build());
+            }
+            return statistics.build();
+        }
+        catch (SQLException | IOException | RuntimeException e) {
+            // statistics are best effort, planning must not fail because of them
+            log.warn(e, "Failed to read statistics of %s", handle.getSchemaTableName());
+            return TableStatistics.empty();
+        }
+    }
+
+    public TableStatisticsMetadata getStatisticsCollectionMetadata(ConnectorTableMetadata tableMetadata)
+    {
+        if (!collectColumnStatisticsOnWrite || isQueryTable(tableMetadata.getTable().getTableName())) {
+            return TableStatisticsMetadata.empty();
+        }
+
+        ImmutableSet.Builder<ColumnStatisticMetadata> columnStatistics = ImmutableSet.builder();
+        for (ColumnMetadata column : tableMetadata.getColumns()) {
+            if (column.isHidden() || isArrayType(column.getType())) {
+                continue;
+            }
+            columnStatistics.add(new ColumnStatisticMetadata(column.getName(), NUMBER_OF_NON_NULL_VALUES));
+            if (column.getType().isComparable()) {
+                columnStatistics.add(new ColumnStatisticMetadata(column.getName(), NUMBER_OF_DISTINCT_VALUES));
+            }
+            if (isRangeType(column.getType())) {
+                columnStatistics.add(new ColumnStatisticMetadata(column.getName(), MIN_VALUE));
+                columnStatistics.add(new ColumnStatisticMetadata(column.getName(), MAX_VALUE));
+            }
+        }
+        return new TableStatisticsMetadata(columnStatistics.build(), ImmutableSet.of(ROW_COUNT), ImmutableList.of());
+    }
+
+    /**
+     * Stores statistics computed while writing the table. Statistics of an insert are merged into
+     * the stored ones: counts are added, ranges widened and the distinct count of the larger of the
+     * two is kept, as the computed sketches are not available for a proper union.
+     */
+    public void storeStatistics(SchemaTableName tableName, List<String> columnNames, List<Type> columnTypes, Collection<ComputedStatistics> computedStatistics, boolean replace)
+    {
+        if (computedStatistics.isEmpty()) {
+            return;
+        }
+        SchemaTableName key = getStatisticsKey(tableName);
+
+        Map<String, Type> types = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            types.put(columnNames.get(i).toLowerCase(ENGLISH), columnTypes.get(i));
+        }
+
+        Map<String, StoredStatistics> statistics = new HashMap<>();
+        for (ComputedStatistics computed : computedStatistics) {
+            Block rowCount = computed.getTableStatistics().get(ROW_COUNT);
+            if (rowCount != null) {
+                statistics.merge(TABLE_ROW, StoredStatistics.ofRowCount(BIGINT.getLong(rowCount, 0)), StoredStatistics::merge);
+            }
+            for (Map.Entry<ColumnStatisticMetadata, Block> entry : computed.getColumnStatistics().entrySet()) {
+                String columnName = entry.getKey().getColumnName().toLowerCase(ENGLISH);
+                StoredStatistics value = StoredStatistics.ofColumnStatistic(entry.getKey().getStatisticType(), types.get(columnName), entry.getValue());
+                statistics.merge(columnName, value, StoredStatistics::merge);
+            }
+        }
+
+        try (PhoenixConnectionLease lease = phoenixClient.leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            phoenixClient.execute(connection, CREATE_STATISTICS_TABLE);
+            if (replace) {
+                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + STATISTICS_TABLE + " WHERE TABLE_SCHEM = ? AND TABLE_NAME = ?")) {
+                    statement.setString(1, key.getSchemaName());
+                    statement.setString(2, key.getTableName());
+                    statement.executeUpdate();
+                }
+            }
+            else {
+                for (Map.Entry<String, StoredStatistics> entry : readStoredStatistics(connection, key).entrySet()) {
+                    statistics.merge(entry.getKey(), entry.getValue(), StoredStatistics::merge);
+                }
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement("UPSERT INTO " + STATISTICS_TABLE + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (Map.Entry<String, StoredStatistics> entry : statistics.entrySet()) {
+                    StoredStatistics value = entry.getValue();
+                    statement.setString(1, key.getSchemaName());
+                    statement.setString(2, key.getTableName());
+                    statement.setString(3, entry.getKey());
+                    statement.setObject(4, value.getRowCount().isPresent() ? value.getRowCount().getAsLong() : null, Types.BIGINT);
+                    statement.setObject(5, value.getNonNullCount().isPresent() ? value.getNonNullCount().getAsLong() : null, Types.BIGINT);
+                    statement.setObject(6, value.getDistinctCount().isPresent() ? value.getDistinctCount().getAsLong() : null, Types.BIGINT);
+                    statement.setObject(7, value.getMin().isPresent() ? value.getMin().getAsDouble() : null, Types.DOUBLE);
+                    statement.setObject(8, value.getMax().isPresent() ? value.getMax().getAsDouble() : null, Types.DOUBLE);
+                    statement.executeUpdate();
+                }
+            }
+            connection.commit();
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+        finally {
+            storedStatistics.invalidate(key);
+        }
+    }
+
+    public void dropStatistics(SchemaTableName tableName)
+    {
+        SchemaTableName key = getStatisticsKey(tableName);
+        try (PhoenixConnectionLease lease = phoenixClient.leaseConnection();
+                PreparedStatement statement = lease.getConnection().prepareStatement("DELETE FROM " + STATISTICS_TABLE + " WHERE TABLE_SCHEM = ? AND TABLE_NAME = ?")) {
+            statement.setString(1, key.getSchemaName());
+            statement.setString(2, key.getTableName());
+            statement.executeUpdate();
+            lease.getConnection().commit();
+        }
+        catch (TableNotFoundException e) {
+            // nothing was ever stored
+        }
+        catch (SQLException e) {
+            // the table is gone already, leftover statistics are replaced when it is created again
+            log.warn(e, "Failed to drop statistics of %s", key);
+        }
+        finally {
+            storedStatistics.invalidate(key);
+        }
+    }
+
+    private Map<String, StoredStatistics> loadStoredStatistics(SchemaTableName key)
+    {
+        try (PhoenixConnectionLease lease = phoenixClient.leaseConnection()) {
+            PhoenixConnection connection = lease.getConnection();
+            return readStoredStatistics(connection, key);
+        }
+        catch (TableNotFoundException e) {
+            return ImmutableMap.of();
+        }
+        catch (SQLException e) {
+            throw new PrestoException(PHOENIX_ERROR, e);
+        }
+    }
+
+    private static Map<String, StoredStatistics> readStoredStatistics(PhoenixConnection connection, SchemaTableName key)
+            throws SQLException
+    {
+        ImmutableMap.Builder<String, StoredStatistics> statistics = ImmutableMap.builder();
+        try (PreparedStatement statement = connection.prepareStatement("" +
+                "SELECT COLUMN_NAME, ROW_COUNT, NON_NULL_COUNT, DISTINCT_COUNT, MIN_VALUE, MAX_VALUE " +
+                "FROM " + STATISTICS_TABLE + " WHERE TABLE_SCHEM = ? AND TABLE_NAME = ?")) {
+            statement.setString(1, key.getSchemaName());
+            statement.setString(2, key.getTableName());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    statistics.put(resultSet.getString("COLUMN_NAME"), new StoredStatistics(
+                            getLong(resultSet, "ROW_COUNT"),
+                            getLong(resultSet, "NON_NULL_COUNT"),
+                            getLong(resultSet, "DISTINCT_COUNT"),
+                            getDouble(resultSet, "MIN_VALUE"),
+                            getDouble(resultSet, "MAX_VALUE")));
+                }
+            }
+        }
+        return statistics.build();
+    }
+
+    private static OptionalLong getLong(ResultSet resultSet, String column)
+            throws SQLException
+    {
+        long value = resultSet.getLong(column);
+        return resultSet.wasNull() ? OptionalLong.empty() : OptionalLong.of(value);
+    }
+
+    private static OptionalDouble getDouble(ResultSet resultSet, String column)
+            throws SQLException
+    {
+        double value = resultSet.getDouble(column);
+        return resultSet.wasNull() ? OptionalDouble.empty() : OptionalDouble.of(value);
+    }
+
+    private static SchemaTableName getStatisticsKey(SchemaTableName tableName)
+    {
+        // statistics of dynamic column views belong to the underlying table
+        return new SchemaTableName(tableName.getSchemaName(), normalizeTableName(tableName.getTableName()));
+    }
+
+    private static int getPrimaryKeyPosition(List<PColumn> pkColumns, String columnName)
+    {
+        for (int i = 0; i < pkColumns.size(); i++) {
+            if (pkColumns.get(i).getName().getString().equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isRangeType(Type type)
+    {
+        return type.equals(BIGINT) ||
+                type.equals(INTEGER) ||
+                type.equals(SMALLINT) ||
+                type.equals(TINYINT) ||
+                type.equals(DOUBLE) ||
+                type.equals(REAL) ||
+                type.equals(DATE) ||
+                type.equals(TIMESTAMP) ||
+                type instanceof DecimalType;
+    }
+
+    private static OptionalDouble toDouble(Type type, Block block)
+    {
+        if (type == null || block.isNull(0) || !isRangeType(type)) {
+            return OptionalDouble.empty();
+        }
+        if (type.equals(DOUBLE)) {
+            return OptionalDouble.of(type.getDouble(block, 0));
+        }
+        if (type.equals(REAL)) {
+            return OptionalDouble.of(intBitsToFloat((int) type.getLong(block, 0)));
+        }
+        if (type instanceof DecimalType) {
+            DecimalType decimalType = (DecimalType) type;
+            BigInteger unscaledValue = decimalType.isShort() ? BigInteger.valueOf(type.getLong(block, 0)) : decodeUnscaledValue(type.getSlice(block, 0));
+            return OptionalDouble.of(new BigDecimal(unscaledValue, decimalType.getScale()).doubleValue());
+        }
+        return OptionalDouble.of(type.getLong(block, 0));
+    }
+
+    /**
+     * Sums the guidepost row counts of the table. Every column family tracks the same rows,
+     * so the family with the most rows is used. Guidepost keys are not used as a range of the
+     * leading key column, they are interior keys and would understate the actual range.
+     */
+    private static Optional<Guideposts> getGuideposts(PhoenixConnection connection, PTable table)
+            throws SQLException
+    {
+        Map<String, Guideposts> families = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(GUIDEPOSTS_QUERY)) {
+            statement.setString(1, table.getPhysicalName().getString());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String family = String.valueOf(resultSet.getString("COLUMN_FAMILY"));
+                    Guideposts guideposts = families.computeIfAbsent(family, ignored -> new Guideposts());
+                    guideposts.addRows(resultSet.getLong("GUIDE_POSTS_ROW_COUNT"));
+                }
+            }
+        }
+        return families.values().stream()
+                .filter(guideposts -> guideposts.getRowCount() > 0)
+                .max((first, second) -> Long.compare(first.getRowCount(), second.getRowCount()));
+    }
+
+    /**
+     * Without guideposts, derives the row count from the store file sizes of the regions and
+     * the size of a row in the HBase format, estimated from the column types.
+     */
+    private static OptionalDouble estimateRowCount(PhoenixConnection connection, PTable table)
+            throws SQLException, IOException
+    {
+        long tableSize = 0;
+        try (HBaseAdmin admin = connection.getQueryServices().getAdmin();
+                RegionLocator regionLocator = admin.getConnection().getRegionLocator(TableName.valueOf(table.getPhysicalName().getBytes()))) {
+            for (long regionSize : new RegionSizeCalculator(regionLocator, admin).getRegionSizeMap().values()) {
+                tableSize += regionSize;
+            }
+        }
+        if (tableSize == 0) {
+            // sizes are only reported in megabytes, small tables look empty
+            return OptionalDouble.empty();
+        }
+
+        long rowKeySize = 0;
+        for (PColumn column : table.getPKColumns()) {
+            rowKeySize += getValueSize(column);
+        }
+        // every row has the empty key value of Phoenix besides a key value per non null column
+        long rowSize = rowKeySize + KEY_VALUE_OVERHEAD;
+        for (PColumn column : table.getColumns()) {
+            if (column.getFamilyName() != null) {
+                rowSize += rowKeySize + KEY_VALUE_OVERHEAD + getValueSize(column);
+            }
+        }
+        return OptionalDouble.of(max(1, tableSize / rowSize));
+    }
+
+    private static int getValueSize(PColumn column)
+    {
+        PDataType<?> type = column.getDataType();
+        if (type.isFixedWidth() && type.getByteSize() != null) {
+            return type.getByteSize();
+        }
+        if (column.getMaxLength() != null) {
+            return column.getMaxLength();
+        }
+        return VARIABLE_WIDTH_VALUE_SIZE;
+    }
+
+    private static class StoredStatistics
+    {
+        private final OptionalLong rowCount;
+        private final OptionalLong nonNullCount;
+        private final OptionalLong distinctCount;
+        private final OptionalDouble min;
+        private final OptionalDouble max;
+
+        public StoredStatistics(OptionalLong rowCount, OptionalLong nonNullCount, OptionalLong distinctCount, OptionalDouble min, OptionalDouble max)
+        {
+            this.rowCount = requireNonNull(rowCount, "rowCount is null");
+            this.nonNullCount = requireNonNull(nonNullCount, "nonNullCount is null");
+            this.distinctCount = requireNonNull(distinctCount, "distinctCount is null");
+            this.min = requireNonNull(min, "min is null");
+            this.max = requireNonNull(max, "max is null");
+        }
+
+        public static StoredStatistics ofRowCount(long rowCount)
+        {
+            return new StoredStatistics(OptionalLong.of(rowCount), OptionalLong.empty(), OptionalLong.empty(), OptionalDouble.empty(), OptionalDouble.empty());
+        }
+
+        public static StoredStatistics ofColumnStatistic(ColumnStatisticType statisticType, Type type, Block value)
+        {
+            OptionalLong count = value.isNull(0) ? OptionalLong.empty() : OptionalLong.of(BIGINT.getLong(value, 0));
+            switch (statisticType) {
+                case NUMBER_OF_NON_NULL_VALUES:
+                    return new StoredStatistics(OptionalLong.empty(), count, OptionalLong.empty(), OptionalDouble.empty(), OptionalDouble.empty());
+                case NUMBER_OF_DISTINCT_VALUES:
+                    return new StoredStatistics(OptionalLong.empty(), OptionalLong.empty(), count, OptionalDouble.empty(), OptionalDouble.empty());
+                case MIN_VALUE:
+                    return new StoredStatistics(OptionalLong.empty(), OptionalLong.empty(), OptionalLong.empty(), toDouble(type, value), OptionalDouble.empty());
+                case MAX_VALUE:
+                    return new StoredStatistics(OptionalLong.empty(), OptionalLong.empty(), OptionalLong.empty(), OptionalDouble.empty(), toDouble(type, value));
+                default:
+                    throw new IllegalArgumentException("Unexpected statistic type: " + statisticType);
+            }
+        }
+
+        public OptionalLong getRowCount()
+        {
+            return rowCount;
+        }
+
+        public OptionalLong getNonNullCount()
+        {
+            return nonNullCount;
+        }
+
+        public OptionalLong getDistinctCount()
+        {
+            return distinctCount;
+        }
+
+        public OptionalDouble getMin()
+        {
+            return min;
+        }
+
+        public OptionalDouble getMax()
+        {
+            return max;
+        }
+
+        public Optional<DoubleRange> getRange()
+        {
+            if (!min.isPresent() || !max.isPresent()) {
+                return Optional.empty();
+            }
+            return Optional.of(new DoubleRange(min.getAsDouble(), max.getAsDouble()));
+        }
+
+        public StoredStatistics merge(StoredStatistics other)
+        {
+            return new StoredStatistics(
+                    merge(rowCount, other.rowCount, Long::sum),
+                    merge(nonNullCount, other.nonNullCount, Long::sum),
+                    merge(distinctCount, other.distinctCount, Math::max),
+                    merge(min, other.min, Math::min),
+                    merge(max, other.max, Math::max));
+        }
+
+        private static OptionalLong merge(OptionalLong first, OptionalLong second, LongBinaryOperator function)
+        {
+            if (!first.isPresent()) {
+                return second;
+            }
+            if (!second.isPresent()) {
+                return first;
+            }
+            return OptionalLong.of(function.applyAsLong(first.getAsLong(), second.getAsLong()));
+        }
+
+        private static OptionalDouble merge(OptionalDouble first, OptionalDouble second, DoubleBinaryOperator function)
+        {
+            if (!first.isPresent()) {
+                return second;
+            }
+            if (!second.isPresent()) {
+                return first;
+            }
+            return OptionalDouble.of(function.applyAsDouble(first.getAsDouble(), second.getAsDouble()));
+        }
+    }
+
+    private static class Guideposts
+    {
+        private long rowCount;
+
+        public void addRows(long rows)
+        {
+            rowCount += rows;
+        }
+
+        public long getRowCount()
+        {
+            return rowCount;
+        }
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.plugin.phoenix;
 
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.session.PropertyMetadata;
 import com.facebook.presto.spi.type.TypeManager;
 import com.google.common.collect.ImmutableList;
@@ -25,11 +26,14 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_TABLE_PROPERTY;
 import static com.facebook.presto.spi.session.PropertyMetadata.booleanProperty;
 import static com.facebook.presto.spi.session.PropertyMetadata.integerProperty;
 import static com.facebook.presto.spi.session.PropertyMetadata.longProperty;
 import static com.facebook.presto.spi.session.PropertyMetadata.stringProperty;
+import static com.facebook.presto.spi.type.IntegerType.INTEGER;
 import static com.facebook.presto.spi.type.TypeSignature.parseTypeSignature;
+import static java.lang.String.format;
 import static java.util.Locale.ENGLISH;
 import static java.util.Objects.requireNonNull;
 
@@ -43,6 +47,8 @@ public final class PhoenixTableProperties
     public static final String ROWKEYS = "rowkeys";
     public static final String SALT_BUCKETS = "salt_buckets";
     public static final String SPLIT_ON = "split_on";
+    public static final String PRESPLIT_REGIONS = "presplit_regions";
+    public static final int MAX_PRESPLIT_REGIONS = 1024;
     public static final String DISABLE_WAL = "disable_wal";
     public static final String IMMUTABLE_ROWS = "immutable_rows";
     public static final String DEFAULT_COLUMN_FAMILY = "default_column_family";
@@ -82,6 +88,21 @@ public final class PhoenixTableProperties
                         "Per-split table Salting does automatic table splitting but in case you want to exactly control where table split occurs with out adding extra byte or change row key order then you can pre-split a table.",
                         null,
                         false),
+                new PropertyMetadata<>(
+                        PRESPLIT_REGIONS,
+                        "Number of regions a table with a generated row key is created with, split evenly over the generated keys.",
+                        INTEGER,
+                        Integer.class,
+                        null,
+                        false,
+                        value -> {
+                            int regions = ((Number) value).intValue();
+                            if (regions < 1 || regions > MAX_PRESPLIT_REGIONS) {
+                                throw new PrestoException(INVALID_TABLE_PROPERTY, format("%s must be between 1 and %s: %s", PRESPLIT_REGIONS, MAX_PRESPLIT_REGIONS, regions));
+                            }
+                            return regions;
+                        },
+                        value -> value),
                 booleanProperty(
                         DISABLE_WAL,
                         "boolean option when true causes HBase not to write data to the write-ahead-log, thus making updates faster at the expense of potentially losing data in the event of a region server failure.",
@@ -176,6 +197,18 @@ public final class PhoenixTableProperties
         return Optional.of(value);
     }
 
+    public static Optional<Integer> getPresplitRegions(Map<String, Object> tableProperties)
+    {
+        requireNonNull(tableProperties);
+
+        Integer value = (Integer) tableProperties.get(PRESPLIT_REGIONS);
+        if (value == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(value);
+    }
+
     public static Optional<Boolean> getDisableWal(Map<String, Object> tableProperties)
     {
         requireNonNull(tableProperties);
@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+/**
+ * How page sinks write rows to Phoenix tables.
+ */
+public enum PhoenixWriteMode
+{
+    /**
+     * Bind every row to an UPSERT statement.
+     */
+    JDBC,
+    /**
+     * Encode rows into HBase mutations and submit them without going through UPSERT, for tables
+     * that Phoenix does not maintain anything else for on writes. Other tables are written with {@link #JDBC}.
+     */
+    DIRECT,
+    /**
+     * Write rows of CREATE TABLE AS and INSERT into HFiles that are loaded into the table when the write finishes,
+     * for the same tables as {@link #DIRECT}. Other tables are written with {@link #JDBC}.
+     */
+    BULK_LOAD,
+}
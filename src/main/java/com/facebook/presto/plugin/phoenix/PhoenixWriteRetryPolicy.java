@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.units.Duration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.RegionTooBusyException;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.quotas.ThrottlingException;
+import org.apache.phoenix.exception.SQLExceptionCode;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.inject.Inject;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLTransientException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixErrorCode.PHOENIX_ERROR;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Decides whether a failed write batch is replayed, and how long the writer backs off before.
+ * Only failures of the HBase client and the Phoenix errors of a stale client view are replayed,
+ * a batch that failed on its data would fail again. Delays grow exponentially from the initial delay up to the maximum, with up to half of each
+ * delay taken off at random so writers that failed together do not retry together.
+ */
+public class PhoenixWriteRetryPolicy
+{
+    private static final Logger log = Logger.get(PhoenixWriteRetryPolicy.class);
+
+    private static final Set<Integer> TRANSIENT_ERROR_CODES = ImmutableSet.of(
+            SQLExceptionCode.IO_EXCEPTION.getErrorCode(),
+            SQLExceptionCode.STALE_REGION_BOUNDARY_CACHE.getErrorCode(),
+            SQLExceptionCode.TRANSACTION_CONFLICT_EXCEPTION.getErrorCode());
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    private final CounterStat retries = new CounterStat();
+    private final CounterStat throttles = new CounterStat();
+    private final CounterStat failures = new CounterStat();
+
+    @Inject
+    public PhoenixWriteRetryPolicy(PhoenixConfig config)
+    {
+        requireNonNull(config, "config is null");
+        this.maxAttempts = config.getWriteRetryMaxAttempts();
+        this.initialDelayMillis = config.getWriteRetryInitialDelay().toMillis();
+        this.maxDelayMillis = config.getWriteRetryMaxDelay().toMillis();
+    }
+
+    /**
+     * Backs off before the next attempt if the failed attempt can be retried.
+     *
+     * @param attempt the number of the failed attempt, starting at 1
+     * @return whether the batch should be written again
+     */
+    public boolean backOff(int attempt, SQLException failure)
+    {
+        if (attempt >= maxAttempts || !isRetryable(failure)) {
+            failures.update(1);
+            return false;
+        }
+        retries.update(1);
+        if (isThrottled(failure)) {
+            throttles.update(1);
+        }
+
+        long delay = min(initialDelayMillis << min(attempt - 1, 30), maxDelayMillis);
+        delay -= ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        log.debug(failure, "Write attempt %s failed, retrying in %s", attempt, new Duration(delay, MILLISECONDS));
+        try {
+            MILLISECONDS.sleep(delay);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrestoException(PHOENIX_ERROR, failure);
+        }
+        return true;
+    }
+
+    /**
+     * Records a failure that is not retried.
+     */
+    public void failed()
+    {
+        failures.update(1);
+    }
+
+    static boolean isRetryable(Throwable failure)
+    {
+        for (Throwable cause : Throwables.getCausalChain(failure)) {
+            if (cause instanceof DoNotRetryIOException || cause instanceof SQLNonTransientException) {
+                return false;
+            }
+            if (cause instanceof RetriesExhaustedWithDetailsException) {
+                // the HBase client reports the failures of all its actions at once
+                return ((RetriesExhaustedWithDetailsException) cause).getCauses().stream()
+                        .noneMatch(DoNotRetryIOException.class::isInstance);
+            }
+            if (cause instanceof IOException || cause instanceof SQLTransientException) {
+                return true;
+            }
+            if (cause instanceof SQLException && TRANSIENT_ERROR_CODES.contains(((SQLException) cause).getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isThrottled(Throwable failure)
+    {
+        for (Throwable cause : Throwables.getCausalChain(failure)) {
+            if (cause instanceof RegionTooBusyException || cause instanceof ThrottlingException) {
+                return true;
+            }
+            // the HBase client reports the failures of all its actions at once
+            if (cause instanceof RetriesExhaustedWithDetailsException) {
+                for (Throwable actionFailure : ((RetriesExhaustedWithDetailsException) cause).getCauses()) {
+                    if (isThrottled(actionFailure)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRetries()
+    {
+        return retries;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getThrottles()
+    {
+        return throttles;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailures()
+    {
+        return failures;
+    }
+}
@@ -48,7 +48,10 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.facebook.presto.spi.type.DateTimeEncoding.unpackMillisUtc;
 import static com.facebook.presto.spi.type.Decimals.isLongDecimal;
@@ -94,6 +97,85 @@ public class QueryBuilder
 
     public String buildSql(PhoenixConnection connection, String catalog, String schema, String table, List<PhoenixColumnHandle> columns, TupleDomain<ColumnHandle> tupleDomain)
             throws SQLException
+    {
+        StringBuilder sql = buildSelect(catalog, schema, table, false, columns);
+
+        List<TypeAndValue> accumulator = new ArrayList<>();
+
+        List<String> clauses = toConjuncts(columns, tupleDomain, accumulator);
+        if (!clauses.isEmpty()) {
+            sql.append(" WHERE ")
+                    .append(Joiner.on(" AND ").join(clauses));
+        }
+
+        try (PhoenixPreparedStatement statement = prepareStatement(connection, sql.toString(), accumulator)) {
+            return generateActualSql(statement.toString(), statement.getParameters().toArray());
+        }
+    }
+
+    /**
+     * Builds a statement selecting the rows whose lookup columns match one of the given keys.
+     * Lookup keys over a primary key prefix are served by Phoenix as point lookups or a skip scan.
+     */
+    public PhoenixPreparedStatement buildLookupStatement(
+            PhoenixConnection connection,
+            String catalog,
+            String schema,
+            String table,
+            boolean useIndexes,
+            List<PhoenixColumnHandle> columns,
+            TupleDomain<ColumnHandle> tupleDomain,
+            List<PhoenixColumnHandle> lookupColumns,
+            List<List<Object>> lookupKeys)
+            throws SQLException
+    {
+        checkArgument(!lookupColumns.isEmpty(), "lookupColumns is empty");
+        checkArgument(!lookupKeys.isEmpty(), "lookupKeys is empty");
+
+        StringBuilder sql = buildSelect(catalog, schema, table, useIndexes, columns);
+
+        List<TypeAndValue> accumulator = new ArrayList<>();
+
+        List<String> clauses = new ArrayList<>(toConjuncts(columns, tupleDomain, accumulator));
+        String key = lookupColumns.size() == 1 ? "?" : "(" + Joiner.on(", ").join(nCopies(lookupColumns.size(), "?")) + ")";
+        for (List<Object> lookupKey : lookupKeys) {
+            for (int i = 0; i < lookupColumns.size(); i++) {
+                bindValue(lookupKey.get(i), lookupColumns.get(i).getColumnType(), accumulator);
+            }
+        }
+        String lookupColumnNames = lookupColumns.stream()
+                .map(PhoenixColumnHandle::getColumnName)
+                .collect(joining(", "));
+        clauses.add((lookupColumns.size() == 1 ? lookupColumnNames : "(" + lookupColumnNames + ")") +
+                " IN (" + Joiner.on(", ").join(nCopies(lookupKeys.size(), key)) + ")");
+
+        sql.append(" WHERE ")
+                .append(Joiner.on(" AND ").join(clauses));
+
+        return prepareStatement(connection, sql.toString(), accumulator);
+    }
+
+    /**
+     * Builds a statement deleting the rows matching the tuple domain.
+     */
+    public PhoenixPreparedStatement buildDeleteStatement(PhoenixConnection connection, String catalog, String schema, String table, TupleDomain<ColumnHandle> tupleDomain)
+            throws SQLException
+    {
+        StringBuilder sql = new StringBuilder("DELETE FROM ");
+        appendTableName(sql, catalog, schema, table);
+
+        List<TypeAndValue> accumulator = new ArrayList<>();
+
+        List<String> clauses = toConjuncts(ImmutableList.of(), tupleDomain, accumulator);
+        if (!clauses.isEmpty()) {
+            sql.append(" WHERE ")
+                    .append(Joiner.on(" AND ").join(clauses));
+        }
+
+        return prepareStatement(connection, sql.toString(), accumulator);
+    }
+
+    private static StringBuilder buildSelect(String catalog, String schema, String table, boolean useIndexes, List<PhoenixColumnHandle> columns)
     {
         StringBuilder sql = new StringBuilder();
 
@@ -101,13 +183,19 @@ public class QueryBuilder
                 .map(PhoenixColumnHandle::getColumnName)
                 .collect(joining(", "));
 
-        sql.append("SELECT /*+ NO_INDEX */ ");
+        sql.append(useIndexes ? "SELECT " : "SELECT /*+ NO_INDEX */ ");
         sql.append(columnNames);
         if (columns.isEmpty()) {
             sql.append("null");
         }
 
         sql.append(" FROM ");
+        appendTableName(sql, catalog, schema, table);
+        return sql;
+    }
+
+    private static void appendTableName(StringBuilder sql, String catalog, String schema, String table)
+    {
         if (!isNullOrEmpty(catalog)) {
             sql.append(catalog).append('.');
         }
@@ -115,80 +203,75 @@ public class QueryBuilder
             sql.append(schema).append('.');
         }
         sql.append(table);
+    }
 
-        List<TypeAndValue> accumulator = new ArrayList<>();
-
-        List<String> clauses = toConjuncts(columns, tupleDomain, accumulator);
-        if (!clauses.isEmpty()) {
-            sql.append(" WHERE ")
-                    .append(Joiner.on(" AND ").join(clauses));
-        }
-
-        try (PhoenixPreparedStatement statement = connection.prepareStatement(sql.toString()).unwrap(PhoenixPreparedStatement.class)) {
-            for (int i = 0; i < accumulator.size(); i++) {
-                TypeAndValue typeAndValue = accumulator.get(i);
-                if (typeAndValue.getType().equals(BigintType.BIGINT)) {
-                    statement.setLong(i + 1, (long) typeAndValue.getValue());
-                }
-                else if (typeAndValue.getType().equals(IntegerType.INTEGER)) {
-                    statement.setInt(i + 1, ((Number) typeAndValue.getValue()).intValue());
-                }
-                else if (typeAndValue.getType().equals(SmallintType.SMALLINT)) {
-                    statement.setShort(i + 1, ((Number) typeAndValue.getValue()).shortValue());
-                }
-                else if (typeAndValue.getType().equals(TinyintType.TINYINT)) {
-                    statement.setByte(i + 1, ((Number) typeAndValue.getValue()).byteValue());
-                }
-                else if (typeAndValue.getType().equals(DoubleType.DOUBLE)) {
-                    statement.setDouble(i + 1, (double) typeAndValue.getValue());
-                }
-                else if (typeAndValue.getType().equals(RealType.REAL)) {
-                    statement.setFloat(i + 1, intBitsToFloat(((Number) typeAndValue.getValue()).intValue()));
-                }
-                else if (typeAndValue.getType().equals(BooleanType.BOOLEAN)) {
-                    statement.setBoolean(i + 1, (boolean) typeAndValue.getValue());
-                }
-                else if (typeAndValue.getType().equals(DateType.DATE)) {
-                    long millis = DAYS.toMillis((long) typeAndValue.getValue());
-                    statement.setDate(i + 1, new Date(UTC.getMillisKeepLocal(DateTimeZone.getDefault(), millis)));
-                }
-                else if (typeAndValue.getType().equals(TimeType.TIME)) {
-                    statement.setTime(i + 1, new Time((long) typeAndValue.getValue()));
-                }
-                else if (typeAndValue.getType().equals(TimeWithTimeZoneType.TIME_WITH_TIME_ZONE)) {
-                    statement.setTime(i + 1, new Time(unpackMillisUtc((long) typeAndValue.getValue())));
-                }
-                else if (typeAndValue.getType().equals(TimestampType.TIMESTAMP)) {
-                    statement.setTimestamp(i + 1, new Timestamp((long) typeAndValue.getValue()));
-                }
-                else if (typeAndValue.getType().equals(TimestampWithTimeZoneType.TIMESTAMP_WITH_TIME_ZONE)) {
-                    statement.setTimestamp(i + 1, new Timestamp(unpackMillisUtc((long) typeAndValue.getValue())));
-                }
-                else if (typeAndValue.getType() instanceof VarcharType) {
-                    statement.setString(i + 1, ((Slice) typeAndValue.getValue()).toStringUtf8());
-                }
-                else if (typeAndValue.getType() instanceof VarcharType) {
-                    statement.setString(i + 1, ((Slice) typeAndValue.getValue()).toStringUtf8());
-                }
-                else if (isShortDecimal(typeAndValue.getType())) {
-                    int scale = ((DecimalType) typeAndValue.getType()).getScale();
-                    BigInteger unscaledValue = BigInteger.valueOf((long) typeAndValue.getValue());
-                    statement.setBigDecimal(i + 1, new BigDecimal(unscaledValue, scale));
-                }
-                else if (isLongDecimal(typeAndValue.getType())) {
-                    int scale = ((DecimalType) typeAndValue.getType()).getScale();
-                    BigInteger unscaledValue = Decimals.decodeUnscaledValue((Slice) typeAndValue.getValue());
-                    statement.setBigDecimal(i + 1, new BigDecimal(unscaledValue, scale));
-                }
-                else {
-                    throw new UnsupportedOperationException("Can't handle type: " + typeAndValue.getType());
-                }
+    private static PhoenixPreparedStatement prepareStatement(PhoenixConnection connection, String sql, List<TypeAndValue> accumulator)
+            throws SQLException
+    {
+        PhoenixPreparedStatement statement = connection.prepareStatement(sql).unwrap(PhoenixPreparedStatement.class);
+        for (int i = 0; i < accumulator.size(); i++) {
+            TypeAndValue typeAndValue = accumulator.get(i);
+            if (typeAndValue.getType().equals(BigintType.BIGINT)) {
+                statement.setLong(i + 1, (long) typeAndValue.getValue());
+            }
+            else if (typeAndValue.getType().equals(IntegerType.INTEGER)) {
+                statement.setInt(i + 1, ((Number) typeAndValue.getValue()).intValue());
+            }
+            else if (typeAndValue.getType().equals(SmallintType.SMALLINT)) {
+                statement.setShort(i + 1, ((Number) typeAndValue.getValue()).shortValue());
+            }
+            else if (typeAndValue.getType().equals(TinyintType.TINYINT)) {
+                statement.setByte(i + 1, ((Number) typeAndValue.getValue()).byteValue());
+            }
+            else if (typeAndValue.getType().equals(DoubleType.DOUBLE)) {
+                statement.setDouble(i + 1, (double) typeAndValue.getValue());
+            }
+            else if (typeAndValue.getType().equals(RealType.REAL)) {
+                statement.setFloat(i + 1, intBitsToFloat(((Number) typeAndValue.getValue()).intValue()));
+            }
+            else if (typeAndValue.getType().equals(BooleanType.BOOLEAN)) {
+                statement.setBoolean(i + 1, (boolean) typeAndValue.getValue());
+            }
+            else if (typeAndValue.getType().equals(DateType.DATE)) {
+                long millis = DAYS.toMillis((long) typeAndValue.getValue());
+                statement.setDate(i + 1, new Date(UTC.getMillisKeepLocal(DateTimeZone.getDefault(), millis)));
+            }
+            else if (typeAndValue.getType().equals(TimeType.TIME)) {
+                statement.setTime(i + 1, new Time((long) typeAndValue.getValue()));
+            }
+            else if (typeAndValue.getType().equals(TimeWithTimeZoneType.TIME_WITH_TIME_ZONE)) {
+                statement.setTime(i + 1, new Time(unpackMillisUtc((long) typeAndValue.getValue())));
+            }
+            else if (typeAndValue.getType().equals(TimestampType.TIMESTAMP)) {
+                statement.setTimestamp(i + 1, new Timestamp((long) typeAndValue.getValue()));
+            }
+            else if (typeAndValue.getType().equals(TimestampWithTimeZoneType.TIMESTAMP_WITH_TIME_ZONE)) {
+                statement.setTimestamp(i + 1, new Timestamp(unpackMillisUtc((long) typeAndValue.getValue())));
+            }
+            else if (typeAndValue.getType() instanceof VarcharType) {
+                statement.setString(i + 1, ((Slice) typeAndValue.getValue()).toStringUtf8());
+            }
+            else if (typeAndValue.getType() instanceof VarcharType) {
+                statement.setString(i + 1, ((Slice) typeAndValue.getValue()).toStringUtf8());
+            }
+            else if (isShortDecimal(typeAndValue.getType())) {
+                int scale = ((DecimalType) typeAndValue.getType()).getScale();
+                BigInteger unscaledValue = BigInteger.valueOf((long) typeAndValue.getValue());
+                statement.setBigDecimal(i + 1, new BigDecimal(unscaledValue, scale));
+            }
+            else if (isLongDecimal(typeAndValue.getType())) {
+                int scale = ((DecimalType) typeAndValue.getType()).getScale();
+                BigInteger unscaledValue = Decimals.decodeUnscaledValue((Slice) typeAndValue.getValue());
+                statement.setBigDecimal(i + 1, new BigDecimal(unscaledValue, scale));
+            }
+            else {
+                throw new UnsupportedOperationException("Can't handle type: " + typeAndValue.getType());
             }
-            return generateActualSql(statement.toString(), statement.getParameters().toArray());
         }
+        return statement;
     }
 
-    private static boolean isAcceptedType(Type type)
+    static boolean isAcceptedType(Type type)
     {
         Type validType = requireNonNull(type, "type is null");
         return validType.equals(BigintType.BIGINT) ||
@@ -207,13 +290,38 @@ public class QueryBuilder
                 validType instanceof DecimalType;
     }
 
+    /**
+     * Whether the values of the type are bound without any conversion, so the translated predicate
+     * selects exactly the rows the domain contains. Temporal values are converted through the JVM
+     * time zone, and floating point values are not compared exactly.
+     */
+    static boolean isExactlyBoundType(Type type)
+    {
+        return type.equals(BigintType.BIGINT) ||
+                type.equals(TinyintType.TINYINT) ||
+                type.equals(SmallintType.SMALLINT) ||
+                type.equals(IntegerType.INTEGER) ||
+                type instanceof VarcharType ||
+                type instanceof DecimalType;
+    }
+
+    /**
+     * Translates the domains of the projected columns, and of the columns the metadata reported
+     * as enforced without them being projected.
+     */
     private List<String> toConjuncts(List<PhoenixColumnHandle> columns, TupleDomain<ColumnHandle> tupleDomain, List<TypeAndValue> accumulator)
     {
+        Map<ColumnHandle, Domain> domains = tupleDomain.getDomains().get();
+        Set<PhoenixColumnHandle> constrainedColumns = new LinkedHashSet<>(columns);
+        domains.keySet().stream()
+                .map(PhoenixColumnHandle.class::cast)
+                .forEach(constrainedColumns::add);
+
         ImmutableList.Builder<String> builder = ImmutableList.builder();
-        for (PhoenixColumnHandle column : columns) {
+        for (PhoenixColumnHandle column : constrainedColumns) {
             Type type = column.getColumnType();
             if (isAcceptedType(type)) {
-                Domain domain = tupleDomain.getDomains().get().get(column);
+                Domain domain = domains.get(column);
                 if (domain != null) {
                     builder.add(toPredicate(column.getColumnName(), domain, type, accumulator));
                 }
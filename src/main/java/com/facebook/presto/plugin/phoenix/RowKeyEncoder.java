@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.SaltingUtil;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.util.ByteUtil;
+import org.apache.phoenix.util.SchemaUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Optional;
+
+import static com.facebook.presto.plugin.phoenix.TableUtils.getPrimaryKeyColumns;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Builds Phoenix row keys from primary key values the same way {@code PTable.newKey} does,
+ * including separators between variable length columns and the leading salt byte.
+ */
+public final class RowKeyEncoder
+{
+    private final List<PhoenixKeyColumn> keyColumns;
+    private final PDataType[] dataTypes;
+    private final boolean rowKeyOrderOptimizable;
+    private final Optional<Integer> saltBuckets;
+
+    public RowKeyEncoder(List<PhoenixKeyColumn> keyColumns, boolean rowKeyOrderOptimizable, Optional<Integer> saltBuckets)
+    {
+        this.keyColumns = ImmutableList.copyOf(requireNonNull(keyColumns, "keyColumns is null"));
+        this.dataTypes = keyColumns.stream().map(PhoenixKeyColumn::getDataType).toArray(PDataType[]::new);
+        this.rowKeyOrderOptimizable = rowKeyOrderOptimizable;
+        this.saltBuckets = requireNonNull(saltBuckets, "saltBuckets is null");
+    }
+
+    public static RowKeyEncoder create(PTable table)
+    {
+        return new RowKeyEncoder(
+                getKeyColumns(table),
+                table.rowKeyOrderOptimizable(),
+                Optional.ofNullable(table.getBucketNum()));
+    }
+
+    public static List<PhoenixKeyColumn> getKeyColumns(PTable table)
+    {
+        return getPrimaryKeyColumns(table).stream()
+                .map(PhoenixKeyColumn::fromPColumn)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    public int getKeyColumnCount()
+    {
+        return keyColumns.size();
+    }
+
+    /**
+     * @param values primary key values as Phoenix Java objects, in primary key order, excluding the salt column
+     */
+    public byte[] encode(Object[] values)
+    {
+        checkArgument(values.length == keyColumns.size(), "expected %s key values, but got %s", keyColumns.size(), values.length);
+
+        // trailing null values are not written
+        int valueCount = values.length;
+        while (valueCount > 0 && values[valueCount - 1] == null) {
+            valueCount--;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (saltBuckets.isPresent()) {
+            // place holder for the salt byte
+            output.write(0);
+        }
+
+        PDataType type = null;
+        SortOrder sortOrder = null;
+        boolean wasNull = false;
+        for (int i = 0; i < valueCount; i++) {
+            // separate variable length column values with a separator byte
+            if (type != null && !type.isFixedWidth()) {
+                output.write(SchemaUtil.getSeparatorByte(rowKeyOrderOptimizable, wasNull, sortOrder));
+            }
+            PhoenixKeyColumn column = keyColumns.get(i);
+            type = dataTypes[i];
+            sortOrder = column.getSortOrder();
+
+            byte[] bytes = values[i] == null ? ByteUtil.EMPTY_BYTE_ARRAY : type.toBytes(values[i], sortOrder);
+            wasNull = bytes.length == 0;
+            if (!wasNull && type.isFixedWidth() && column.getMaxLength() != null && bytes.length < column.getMaxLength()) {
+                ImmutableBytesWritable padded = new ImmutableBytesWritable(bytes);
+                type.pad(padded, column.getMaxLength(), sortOrder);
+                bytes = padded.copyBytes();
+            }
+            output.write(bytes, 0, bytes.length);
+        }
+        // descending variable length columns need a trailing separator
+        if (type != null && !type.isFixedWidth() && SchemaUtil.getSeparatorByte(rowKeyOrderOptimizable, wasNull, sortOrder) == QueryConstants.DESC_SEPARATOR_BYTE) {
+            output.write(QueryConstants.DESC_SEPARATOR_BYTE);
+        }
+
+        byte[] rowKey = output.toByteArray();
+        if (saltBuckets.isPresent()) {
+            rowKey[0] = SaltingUtil.getSaltingByte(rowKey, 1, rowKey.length - 1, saltBuckets.get());
+        }
+        return rowKey;
+    }
+
+    public static int getSaltBucket(byte[] rowKey)
+    {
+        return rowKey.length == 0 ? 0 : rowKey[0] & 0xFF;
+    }
+}
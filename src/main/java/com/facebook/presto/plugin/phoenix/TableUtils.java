@@ -17,6 +17,8 @@ import com.facebook.presto.spi.type.Type;
 import com.facebook.presto.spi.type.TypeManager;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PTable;
 
 import java.util.List;
 
@@ -28,6 +30,7 @@ import static java.util.Objects.requireNonNull;
 public class TableUtils
 {
     private static final Splitter DYNAMIC_COLUMN_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final String QUERY_TABLE_PREFIX = "$query:";
 
     private TableUtils()
     {
@@ -35,6 +38,9 @@ public class TableUtils
 
     public static String normalizeTableName(String tableName)
     {
+        if (isQueryTable(tableName)) {
+            return tableName;
+        }
         int dynamicColumnsIndex = tableName.indexOf('$');
         if (dynamicColumnsIndex > -1) {
             // remove dynamic columns.
@@ -49,7 +55,7 @@ public class TableUtils
         ImmutableList.Builder<PhoenixColumnHandle> columnHandles = ImmutableList.builder();
 
         int dynamicColumnsIndex = tableName.indexOf('$');
-        if (dynamicColumnsIndex > -1) {
+        if (dynamicColumnsIndex > -1 && !isQueryTable(tableName)) {
             String dynamicColumns = tableName.substring(dynamicColumnsIndex + 1);
             for (String dynamicColumn : DYNAMIC_COLUMN_SPLITTER.split(dynamicColumns)) {
                 ImmutableList<String> columnSignature = ImmutableList.copyOf(dynamicColumn.split("\\s", 2));
@@ -64,4 +70,30 @@ public class TableUtils
         }
         return columnHandles.build();
     }
+
+    /**
+     * A query table is named {@code "$query:<phoenix select>"} and exposes the result of running the
+     * SELECT natively in Phoenix, e.g. to let the region servers aggregate. Presto lower cases table
+     * names, so string literals in the query are lower cased as well.
+     */
+    public static boolean isQueryTable(String tableName)
+    {
+        return tableName.startsWith(QUERY_TABLE_PREFIX);
+    }
+
+    public static String getQueryTableSql(String tableName)
+    {
+        checkArgument(isQueryTable(tableName), "Not a query table: %s", tableName);
+        return tableName.substring(QUERY_TABLE_PREFIX.length());
+    }
+
+    public static List<PColumn> getPrimaryKeyColumns(PTable table)
+    {
+        List<PColumn> pkColumns = table.getPKColumns();
+        if (table.getBucketNum() != null) {
+            // skip the salt byte column
+            return pkColumns.subList(1, pkColumns.size());
+        }
+        return pkColumns;
+    }
 }
@@ -13,13 +13,45 @@
  */
 package com.facebook.presto.plugin.phoenix;
 
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.RecordCursor;
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.type.DecimalType;
 import com.facebook.presto.spi.type.StandardTypes;
 import com.facebook.presto.spi.type.Type;
+import com.google.common.primitives.Shorts;
+import com.google.common.primitives.SignedBytes;
+import io.airlift.slice.Slice;
+import org.joda.time.DateTimeZone;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+import static com.facebook.presto.spi.StandardErrorCode.NOT_SUPPORTED;
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+import static com.facebook.presto.spi.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.spi.type.Chars.isCharType;
 import static com.facebook.presto.spi.type.DateType.DATE;
+import static com.facebook.presto.spi.type.Decimals.decodeUnscaledValue;
+import static com.facebook.presto.spi.type.Decimals.isShortDecimal;
+import static com.facebook.presto.spi.type.Decimals.readBigDecimal;
+import static com.facebook.presto.spi.type.DoubleType.DOUBLE;
+import static com.facebook.presto.spi.type.IntegerType.INTEGER;
+import static com.facebook.presto.spi.type.RealType.REAL;
+import static com.facebook.presto.spi.type.SmallintType.SMALLINT;
 import static com.facebook.presto.spi.type.TimeType.TIME;
 import static com.facebook.presto.spi.type.TimestampType.TIMESTAMP;
 import static com.facebook.presto.spi.type.TimestampWithTimeZoneType.TIMESTAMP_WITH_TIME_ZONE;
+import static com.facebook.presto.spi.type.TinyintType.TINYINT;
+import static com.facebook.presto.spi.type.TypeUtils.readNativeValue;
+import static com.facebook.presto.spi.type.VarbinaryType.VARBINARY;
+import static com.facebook.presto.spi.type.Varchars.isVarcharType;
+import static java.lang.Float.intBitsToFloat;
+import static java.lang.Math.toIntExact;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static org.joda.time.chrono.ISOChronology.getInstanceUTC;
 
 public final class TypeUtils
 {
@@ -49,4 +81,140 @@ public final class TypeUtils
                 type.equals(TIMESTAMP) ||
                 type.equals(TIMESTAMP_WITH_TIME_ZONE);
     }
+
+    public static Object getNativeValue(Type type, RecordCursor cursor, int field)
+    {
+        if (cursor.isNull(field)) {
+            return null;
+        }
+        Class<?> javaType = type.getJavaType();
+        if (javaType == boolean.class) {
+            return cursor.getBoolean(field);
+        }
+        if (javaType == long.class) {
+            return cursor.getLong(field);
+        }
+        if (javaType == double.class) {
+            return cursor.getDouble(field);
+        }
+        if (javaType == Slice.class) {
+            return cursor.getSlice(field);
+        }
+        return cursor.getObject(field);
+    }
+
+    /**
+     * Converts a scalar value to the Java object Phoenix binds for the type, the same way an UPSERT would receive it.
+     */
+    public static Object toPhoenixObject(Type type, Block block, int position)
+    {
+        return toPhoenixObject(type, readNativeValue(type, block, position));
+    }
+
+    /**
+     * Returns a reader of the non-null values of the type as the objects {@link #toPhoenixObject} converts them to,
+     * for callers that convert many values of the same type.
+     */
+    public static PhoenixObjectReader createPhoenixObjectReader(Type type)
+    {
+        if (BOOLEAN.equals(type)) {
+            return type::getBoolean;
+        }
+        else if (BIGINT.equals(type)) {
+            return type::getLong;
+        }
+        else if (INTEGER.equals(type)) {
+            return (block, position) -> toIntExact(type.getLong(block, position));
+        }
+        else if (SMALLINT.equals(type)) {
+            return (block, position) -> Shorts.checkedCast(type.getLong(block, position));
+        }
+        else if (TINYINT.equals(type)) {
+            return (block, position) -> SignedBytes.checkedCast(type.getLong(block, position));
+        }
+        else if (DOUBLE.equals(type)) {
+            return type::getDouble;
+        }
+        else if (REAL.equals(type)) {
+            return (block, position) -> intBitsToFloat(toIntExact(type.getLong(block, position)));
+        }
+        else if (type instanceof DecimalType) {
+            return (block, position) -> readBigDecimal((DecimalType) type, block, position);
+        }
+        else if (isVarcharType(type) || isCharType(type)) {
+            return (block, position) -> type.getSlice(block, position).toStringUtf8();
+        }
+        else if (VARBINARY.equals(type)) {
+            return (block, position) -> type.getSlice(block, position).getBytes();
+        }
+        else if (DATE.equals(type)) {
+            return (block, position) -> toPhoenixDate(type.getLong(block, position));
+        }
+        else if (TIMESTAMP.equals(type)) {
+            return (block, position) -> new Timestamp(type.getLong(block, position));
+        }
+        throw new PrestoException(NOT_SUPPORTED, "Unsupported column type: " + type.getDisplayName());
+    }
+
+    public static Object toPhoenixObject(Type type, Object value)
+    {
+        if (value == null) {
+            return null;
+        }
+
+        if (BOOLEAN.equals(type)) {
+            return value;
+        }
+        else if (BIGINT.equals(type)) {
+            return value;
+        }
+        else if (INTEGER.equals(type)) {
+            return toIntExact((long) value);
+        }
+        else if (SMALLINT.equals(type)) {
+            return Shorts.checkedCast((long) value);
+        }
+        else if (TINYINT.equals(type)) {
+            return SignedBytes.checkedCast((long) value);
+        }
+        else if (DOUBLE.equals(type)) {
+            return value;
+        }
+        else if (REAL.equals(type)) {
+            return intBitsToFloat(toIntExact((long) value));
+        }
+        else if (type instanceof DecimalType) {
+            int scale = ((DecimalType) type).getScale();
+            if (isShortDecimal(type)) {
+                return new BigDecimal(BigInteger.valueOf((long) value), scale);
+            }
+            return new BigDecimal(decodeUnscaledValue((Slice) value), scale);
+        }
+        else if (isVarcharType(type) || isCharType(type)) {
+            return ((Slice) value).toStringUtf8();
+        }
+        else if (VARBINARY.equals(type)) {
+            return ((Slice) value).getBytes();
+        }
+        else if (DATE.equals(type)) {
+            return toPhoenixDate((long) value);
+        }
+        else if (TIMESTAMP.equals(type)) {
+            return new Timestamp((long) value);
+        }
+        throw new PrestoException(NOT_SUPPORTED, "Unsupported column type: " + type.getDisplayName());
+    }
+
+    private static Date toPhoenixDate(long days)
+    {
+        // convert to midnight in default time zone
+        long utcMillis = DAYS.toMillis(days);
+        long localMillis = getInstanceUTC().getZone().getMillisKeepLocal(DateTimeZone.getDefault(), utcMillis);
+        return new Date(localMillis);
+    }
+
+    public interface PhoenixObjectReader
+    {
+        Object read(Block block, int position);
+    }
 }
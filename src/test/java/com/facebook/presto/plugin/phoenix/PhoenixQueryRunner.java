@@ -14,26 +14,46 @@
 package com.facebook.presto.plugin.phoenix;
 
 import com.facebook.presto.Session;
+import com.facebook.presto.metadata.Metadata;
 import com.facebook.presto.metadata.QualifiedObjectName;
+import com.facebook.presto.metadata.TableHandle;
+import com.facebook.presto.metadata.TableLayoutResult;
+import com.facebook.presto.spi.Constraint;
+import com.facebook.presto.spi.SortingProperty;
 import com.facebook.presto.testing.QueryRunner;
 import com.facebook.presto.tests.DistributedQueryRunner;
 import com.facebook.presto.tpch.TpchPlugin;
 import com.google.common.collect.ImmutableMap;
 import io.airlift.log.Logger;
 import io.airlift.tpch.TpchTable;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.util.PhoenixRuntime;
+import org.apache.phoenix.util.SchemaUtil;
 import org.intellij.lang.annotations.Language;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static com.facebook.presto.testing.TestingSession.testSessionBuilder;
 import static com.facebook.presto.tpch.TpchMetadata.TINY_SCHEMA_NAME;
+import static com.facebook.presto.transaction.TransactionBuilder.transaction;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.Iterables.getOnlyElement;
 import static io.airlift.units.Duration.nanosSince;
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
 import static java.lang.String.format;
+import static java.nio.file.Files.createTempDirectory;
+import static java.util.Locale.ENGLISH;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public final class PhoenixQueryRunner
@@ -51,10 +71,14 @@ public final class PhoenixQueryRunner
     public static QueryRunner createPhoenixQueryRunner(int nodeCount, Map<String, String> extraProperties, List<TpchTable<?>> tables)
             throws Exception
     {
-        DistributedQueryRunner queryRunner = DistributedQueryRunner.builder(createSession())
-                .setNodeCount(nodeCount)
-                .setExtraProperties(extraProperties)
-                .build();
+        return createPhoenixQueryRunner(nodeCount, extraProperties, ImmutableMap.of(), tables);
+    }
+
+    public static QueryRunner createPhoenixQueryRunner(int nodeCount, Map<String, String> extraProperties, Map<String, String> connectorProperties, List<TpchTable<?>> tables)
+            throws Exception
+    {
+        Path bulkLoadDirectory = createTempDirectory("phoenix-bulk-load");
+        DistributedQueryRunner queryRunner = new PhoenixDistributedQueryRunner(nodeCount, extraProperties, bulkLoadDirectory);
 
         queryRunner.installPlugin(new TpchPlugin());
         queryRunner.createCatalog("tpch", "tpch");
@@ -63,6 +87,8 @@ public final class PhoenixQueryRunner
                 .put("connection-url", server.getJdbcUrl())
                 .put("connection-properties", "phoenix.schema.isNamespaceMappingEnabled=true")
                 .put("allow-drop-table", "true")
+                .put("bulk-load.staging-directory", bulkLoadDirectory.toString())
+                .putAll(connectorProperties)
                 .build();
 
         queryRunner.installPlugin(new PhoenixPlugin());
@@ -88,6 +114,67 @@ public final class PhoenixQueryRunner
         }
     }
 
+    /**
+     * Runs a statement directly in Phoenix, for what Presto cannot express, like creating an index.
+     */
+    public static void executeInPhoenix(String sql)
+            throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(server.getJdbcUrl());
+                Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+            connection.commit();
+        }
+    }
+
+    /**
+     * Returns the only value of a query run directly in Phoenix.
+     */
+    public static Object queryPhoenix(String sql)
+            throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(server.getJdbcUrl());
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(sql)) {
+            checkState(resultSet.next(), "query returned no rows: %s", sql);
+            return resultSet.getObject(1);
+        }
+    }
+
+    /**
+     * Returns the number of regions of a Phoenix table.
+     */
+    public static int getRegionCount(String schema, String table)
+            throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(server.getJdbcUrl())) {
+            PhoenixConnection phoenixConnection = connection.unwrap(PhoenixConnection.class);
+            byte[] physicalName = PhoenixRuntime.getTable(phoenixConnection, SchemaUtil.getTableName(schema, table)).getPhysicalName().getBytes();
+            return phoenixConnection.getQueryServices().getAllTableRegions(physicalName).size();
+        }
+    }
+
+    /**
+     * Returns the columns of the sort order declared by the layout of a table scanned without a predicate,
+     * each followed by its sort order.
+     */
+    public static List<String> getLayoutSortOrder(QueryRunner queryRunner, Session session, String table)
+    {
+        Metadata metadata = queryRunner.getMetadata();
+        return transaction(queryRunner.getTransactionManager(), queryRunner.getAccessControl())
+                .readOnly()
+                .execute(session, transactionSession -> {
+                    QualifiedObjectName tableName = new QualifiedObjectName(session.getCatalog().get(), session.getSchema().get(), table);
+                    TableHandle tableHandle = metadata.getTableHandle(transactionSession, tableName)
+                            .orElseThrow(() -> new IllegalArgumentException("table not found: " + tableName));
+                    TableLayoutResult layout = getOnlyElement(metadata.getLayouts(transactionSession, tableHandle, Constraint.alwaysTrue(), Optional.empty()));
+                    return layout.getLayout().getLocalProperties().stream()
+                            .map(SortingProperty.class::cast)
+                            .map(property -> ((PhoenixColumnHandle) property.getColumn()).getColumnName().toLowerCase(ENGLISH) + " " + property.getOrder())
+                            .collect(toImmutableList());
+                });
+    }
+
     private static void copyTpchTables(
             QueryRunner queryRunner,
             String sourceCatalog,
@@ -153,4 +240,34 @@ public final class PhoenixQueryRunner
                 .setSchema(TPCH_SCHEMA)
                 .build();
     }
+
+    private static class PhoenixDistributedQueryRunner
+            extends DistributedQueryRunner
+    {
+        private final Path bulkLoadDirectory;
+
+        @SuppressWarnings("deprecation")
+        public PhoenixDistributedQueryRunner(int nodeCount, Map<String, String> extraProperties, Path bulkLoadDirectory)
+                throws Exception
+        {
+            super(createSession(), nodeCount, extraProperties);
+            this.bulkLoadDirectory = bulkLoadDirectory;
+        }
+
+        @Override
+        public void close()
+        {
+            try {
+                super.close();
+            }
+            finally {
+                try {
+                    deleteRecursively(bulkLoadDirectory, ALLOW_INSECURE);
+                }
+                catch (IOException e) {
+                    LOG.warn(e, "Failed to delete bulk load staging directory %s", bulkLoadDirectory);
+                }
+            }
+        }
+    }
 }
@@ -19,6 +19,7 @@ import com.facebook.presto.testing.MaterializedRow;
 import com.facebook.presto.tests.AbstractTestIntegrationSmokeTest;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import org.apache.phoenix.schema.PIndexState;
 import org.intellij.lang.annotations.Language;
 import org.testng.annotations.Test;
 
@@ -29,6 +30,7 @@ import java.time.LocalDateTime;
 import static com.facebook.presto.testing.TestingSession.testSessionBuilder;
 import static io.airlift.tpch.TpchTable.ORDERS;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ENGLISH;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
@@ -66,6 +68,18 @@ public class TestPhoenixIntegrationSmokeTest
         assertTableColumnNames("test_create_presplits_table_as_if_not_exists", "rid", "val1");
     }
 
+    @Test
+    public void testCreateTableAsWithPresplitRegions()
+            throws Exception
+    {
+        // with another table property, which SPLIT ON has to follow
+        assertUpdate("CREATE TABLE test_presplit_regions WITH (presplit_regions = 8, immutable_rows = true) AS SELECT orderkey, custkey FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT orderkey, custkey FROM test_presplit_regions", "SELECT orderkey, custkey FROM orders");
+        assertEquals(PhoenixQueryRunner.getRegionCount("TPCH", "TEST_PRESPLIT_REGIONS"), 8);
+        assertQueryFails("CREATE TABLE test_presplit_regions_rowkeys WITH (rowkeys = ARRAY['orderkey'], presplit_regions = 8) AS SELECT orderkey FROM orders", ".*presplit_regions requires a generated row key.*");
+        assertUpdate("DROP TABLE test_presplit_regions");
+    }
+
     @Test
     public void tesdtDuplicateKeyUpdateColumns()
     {
@@ -89,6 +103,10 @@ public class TestPhoenixIntegrationSmokeTest
         assertQuery(session, "SELECT col2 FROM test_dup_columns where rid = 'key'", "SELECT 2000");
         assertQuery(session, "SELECT col3 FROM test_dup_columns where rid = 'key'", "SELECT 33000");
 
+        // rows of the same key in a batch are applied as one increment
+        assertUpdate(session, "INSERT INTO test_dup_columns VALUES('key', 1, 5, 2), ('key', 10, 6, 20)", 2);
+        assertQuery(session, "SELECT col1, col2, col3 FROM test_dup_columns where rid = 'key'", "SELECT 11011, 2000, 33022");
+
         session = testSessionBuilder()
                 .setCatalog(getSession().getCatalog().get())
                 .setSchema(getSession().getSchema().get()).build();
@@ -98,6 +116,23 @@ public class TestPhoenixIntegrationSmokeTest
         assertQuery(session, "SELECT col3 FROM test_dup_columns where rid = 'key'", "SELECT 3000");
     }
 
+    @Test
+    public void testDuplicateKeyUpdateSumsIncrements()
+    {
+        assertUpdate("CREATE TABLE test_dup_sum WITH (ROWKEYS = ARRAY['RID']) AS SELECT 'seed' AS RID, 0 AS COL1, 0 AS COL2", 1);
+        Session session = Session.builder(getSession())
+                .setCatalogSessionProperty("phoenix", "duplicate_key_update_columns", "col1")
+                .build();
+
+        // last write wins would keep one of the increments instead of their sum
+        assertUpdate(session, "INSERT INTO test_dup_sum SELECT 'key', CAST(n AS integer), CAST(n AS integer) FROM UNNEST(sequence(1, 100)) t(n)", 100);
+        assertQuery("SELECT col1 FROM test_dup_sum WHERE rid = 'key'", "SELECT 5050");
+        assertUpdate(session, "INSERT INTO test_dup_sum SELECT 'key', CAST(n AS integer), CAST(n AS integer) FROM UNNEST(sequence(1, 100)) t(n)", 100);
+        assertQuery("SELECT col1 FROM test_dup_sum WHERE rid = 'key'", "SELECT 10100");
+
+        assertUpdate("DROP TABLE test_dup_sum");
+    }
+
     @Test
     public void createTableWithEveryType()
             throws Exception
@@ -178,6 +213,166 @@ public class TestPhoenixIntegrationSmokeTest
         assertQuery("SELECT entry, dummy, dummy2, DynColA, DynColB FROM \"test_dynamic_columns$DynColA VARCHAR(32), DynColB VARCHAR(32)\" where entry='dynEntry'", "SELECT 'dynEntry','aValue','bValue','DynColValuea','DynColValueb'");
     }
 
+    @Test
+    public void testSaltedTableBucketedAggregation()
+    {
+        assertUpdate("CREATE TABLE test_salted_orders WITH (ROWKEYS = ARRAY['orderkey'], SALT_BUCKETS = 4) AS SELECT orderkey, custkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT orderkey, count(*), sum(totalprice) FROM test_salted_orders GROUP BY orderkey", "SELECT orderkey, count(*), sum(totalprice) FROM orders GROUP BY orderkey");
+        assertQuery("SELECT count(*) FROM test_salted_orders a JOIN test_salted_orders b ON a.orderkey = b.orderkey", "SELECT count(*) FROM orders");
+        assertUpdate("DROP TABLE test_salted_orders");
+    }
+
+    @Test
+    public void testListTableColumnsSkipsIndexes()
+            throws Exception
+    {
+        assertUpdate("CREATE TABLE test_list_columns WITH (ROWKEYS = ARRAY['orderkey']) AS SELECT orderkey, custkey FROM orders", "SELECT count(*) FROM orders");
+        PhoenixQueryRunner.executeInPhoenix("CREATE INDEX test_list_columns_custkey ON tpch.test_list_columns (custkey)");
+        assertQuery(
+                "SELECT table_name, column_name FROM information_schema.columns WHERE table_schema = 'tpch' AND table_name LIKE 'test_list_columns%'",
+                "VALUES ('test_list_columns', 'orderkey'), ('test_list_columns', 'custkey')");
+        assertUpdate("DROP TABLE test_list_columns");
+    }
+
+    @Test
+    public void testTableLayoutWithoutRowKeyOrderedScans()
+    {
+        // splits are read with parallel unordered scans, so the layout declares no sort order
+        assertUpdate("CREATE TABLE test_unordered_layout WITH (ROWKEYS = ARRAY['orderkey', 'custkey']) AS SELECT orderkey, custkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertEquals(PhoenixQueryRunner.getLayoutSortOrder(getQueryRunner(), getSession(), "test_unordered_layout"), ImmutableList.of());
+        assertUpdate("DROP TABLE test_unordered_layout");
+    }
+
+    @Test
+    public void testWriteModes()
+    {
+        for (String writeMode : ImmutableList.of("jdbc", "direct")) {
+            Session session = testSessionBuilder()
+                    .setCatalog(getSession().getCatalog().get())
+                    .setSchema(getSession().getSchema().get())
+                    .setCatalogSessionProperty("phoenix", "write_mode", writeMode).build();
+
+            assertUpdate("CREATE TABLE test_write_mode (orderkey bigint, custkey bigint, orderdate date, comment varchar) WITH (ROWKEYS = ARRAY['orderkey'])");
+            assertUpdate(session, "INSERT INTO test_write_mode SELECT orderkey, custkey, orderdate, comment FROM orders", "SELECT count(*) FROM orders");
+            assertQuery("SELECT orderkey, custkey, orderdate, comment FROM test_write_mode", "SELECT orderkey, custkey, orderdate, comment FROM orders");
+
+            Session invalidUpsertColumns = Session.builder(session)
+                    .setCatalogSessionProperty("phoenix", "upsert_columns", "missing_column")
+                    .build();
+            assertQueryFails(invalidUpsertColumns, "INSERT INTO test_write_mode VALUES (1, 1, DATE '2020-01-01', 'x')", "Upsert column name does not exist in target table: missing_column");
+            assertUpdate("DROP TABLE test_write_mode");
+        }
+    }
+
+    @Test
+    public void testBulkLoad()
+    {
+        Session session = testSessionBuilder()
+                .setCatalog(getSession().getCatalog().get())
+                .setSchema(getSession().getSchema().get())
+                .setCatalogSessionProperty("phoenix", "write_mode", "bulk_load").build();
+
+        assertUpdate(session, "CREATE TABLE test_bulk_load WITH (ROWKEYS = ARRAY['orderkey'], SALT_BUCKETS = 4) AS SELECT orderkey, custkey, comment FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT orderkey, custkey, comment FROM test_bulk_load", "SELECT orderkey, custkey, comment FROM orders");
+
+        assertUpdate(session, "INSERT INTO test_bulk_load SELECT orderkey + 1000000, custkey, NULL FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT count(*), count(comment) FROM test_bulk_load", "SELECT 2 * count(*), count(*) FROM orders");
+        assertUpdate("DROP TABLE test_bulk_load");
+    }
+
+    @Test
+    public void testFastLoad()
+            throws Exception
+    {
+        Session session = testSessionBuilder()
+                .setCatalog(getSession().getCatalog().get())
+                .setSchema(getSession().getSchema().get())
+                .setCatalogSessionProperty("phoenix", "fast_load", "true").build();
+
+        assertUpdate("CREATE TABLE test_fast_load WITH (ROWKEYS = ARRAY['orderkey']) AS SELECT orderkey, custkey FROM orders WHERE orderkey < 1000", "SELECT count(*) FROM orders WHERE orderkey < 1000");
+        PhoenixQueryRunner.executeInPhoenix("CREATE INDEX test_fast_load_custkey ON tpch.test_fast_load (custkey)");
+
+        assertUpdate(session, "INSERT INTO test_fast_load SELECT orderkey, custkey FROM orders WHERE orderkey >= 1000", "SELECT count(*) FROM orders WHERE orderkey >= 1000");
+        assertQuery("SELECT orderkey, custkey FROM test_fast_load", "SELECT orderkey, custkey FROM orders");
+        assertFastLoadFinished();
+
+        // the table is restored when the insert fails too
+        assertQueryFails(session, "INSERT INTO test_fast_load VALUES (NULL, 1)", ".*may not be null.*");
+        assertFastLoadFinished();
+        assertUpdate("DROP TABLE test_fast_load");
+    }
+
+    private void assertFastLoadFinished()
+            throws Exception
+    {
+        String createTable = (String) computeActual("SHOW CREATE TABLE test_fast_load").getOnlyValue();
+        assertFalse(createTable.toLowerCase(ENGLISH).contains("disable_wal"), createTable);
+        assertEquals(
+                PhoenixQueryRunner.queryPhoenix("SELECT index_state FROM system.catalog WHERE table_schem = 'TPCH' AND table_name = 'TEST_FAST_LOAD_CUSTKEY' AND index_state IS NOT NULL"),
+                PIndexState.ACTIVE.getSerializedValue());
+        // reading the index table itself, so the rows written while it was disabled must have been rebuilt into it
+        assertEquals(
+                ((Number) PhoenixQueryRunner.queryPhoenix("SELECT count(*) FROM tpch.test_fast_load_custkey")).longValue(),
+                computeActual("SELECT count(*) FROM orders").getOnlyValue());
+    }
+
+    @Test
+    public void testIndexJoinOnPrimaryKey()
+    {
+        assertUpdate("CREATE TABLE test_index_join WITH (ROWKEYS = ARRAY['orderkey']) AS SELECT orderkey, custkey FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT t.k, i.custkey FROM (VALUES BIGINT '1', BIGINT '2', BIGINT '3', BIGINT '999999') t(k) JOIN test_index_join i ON i.orderkey = t.k",
+                "SELECT orderkey, custkey FROM orders WHERE orderkey IN (1, 2, 3)");
+        assertUpdate("DROP TABLE test_index_join");
+    }
+
+    @Test
+    public void testPointLookup()
+    {
+        assertUpdate("CREATE TABLE test_point_lookup WITH (ROWKEYS = ARRAY['orderkey', 'custkey'], SALT_BUCKETS = 4) AS SELECT orderkey, custkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT orderkey, totalprice FROM test_point_lookup WHERE orderkey IN (1, 2, 3) AND custkey IN (370, 781, 1234)",
+                "SELECT orderkey, totalprice FROM orders WHERE orderkey IN (1, 2, 3) AND custkey IN (370, 781, 1234)");
+        assertQuery("SELECT totalprice FROM test_point_lookup WHERE orderkey = 1 AND custkey = 370 AND totalprice > 0",
+                "SELECT totalprice FROM orders WHERE orderkey = 1 AND custkey = 370");
+        assertUpdate("DROP TABLE test_point_lookup");
+
+        // a varchar key is looked up by its encoded row key
+        assertUpdate("CREATE TABLE test_point_lookup_varchar WITH (ROWKEYS = ARRAY['clerk', 'orderkey'], SALT_BUCKETS = 4) AS SELECT clerk, orderkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT orderkey, totalprice FROM test_point_lookup_varchar WHERE clerk IN ('Clerk#000000951', 'Clerk#000000880') AND orderkey IN (1, 2)",
+                "SELECT orderkey, totalprice FROM orders WHERE clerk IN ('Clerk#000000951', 'Clerk#000000880') AND orderkey IN (1, 2)");
+        assertUpdate("DROP TABLE test_point_lookup_varchar");
+
+        // dates are bound through the JVM time zone, so a date key is scanned instead
+        assertUpdate("CREATE TABLE test_point_lookup_date WITH (ROWKEYS = ARRAY['orderdate', 'orderkey'], SALT_BUCKETS = 4) AS SELECT orderdate, orderkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT orderkey, totalprice FROM test_point_lookup_date WHERE orderdate IN (DATE '1996-01-02', DATE '1996-12-01') AND orderkey IN (1, 2)",
+                "SELECT orderkey, totalprice FROM orders WHERE orderdate IN (DATE '1996-01-02', DATE '1996-12-01') AND orderkey IN (1, 2)");
+        assertUpdate("DROP TABLE test_point_lookup_date");
+    }
+
+    @Test
+    public void testDeleteByRowKeyPrefix()
+    {
+        assertUpdate("CREATE TABLE test_delete_prefix WITH (ROWKEYS = ARRAY['orderkey', 'custkey']) AS SELECT orderkey, custkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertUpdate("DELETE FROM test_delete_prefix WHERE orderkey < 100", "SELECT count(*) FROM orders WHERE orderkey < 100");
+        assertQuery("SELECT count(*) FROM test_delete_prefix", "SELECT count(*) FROM orders WHERE orderkey >= 100");
+        assertQueryFails("DELETE FROM test_delete_prefix WHERE custkey = 370", "DELETE is only supported with a predicate on a leading prefix of the primary key columns");
+        assertUpdate("DROP TABLE test_delete_prefix");
+
+        // dates are bound through the JVM time zone, so the engine filters them again and does not delete by them
+        assertUpdate("CREATE TABLE test_delete_date WITH (ROWKEYS = ARRAY['orderdate', 'orderkey']) AS SELECT orderdate, orderkey FROM orders", "SELECT count(*) FROM orders");
+        assertQuery("SELECT count(*) FROM test_delete_date WHERE orderdate = DATE '1995-01-01'", "SELECT count(*) FROM orders WHERE orderdate = DATE '1995-01-01'");
+        assertQueryFails("DELETE FROM test_delete_date WHERE orderdate < DATE '1993-01-01'", "DELETE is only supported with a predicate on a leading prefix of the primary key columns");
+        assertUpdate("DROP TABLE test_delete_date");
+    }
+
+    @Test
+    public void testQueryTable()
+    {
+        assertQuery("SELECT custkey, order_count FROM \"$query:select custkey, count(*) order_count from tpch.orders group by custkey\"",
+                "SELECT custkey, count(*) FROM orders GROUP BY custkey");
+        assertQuery("SELECT sum(total) FROM \"$query:select sum(totalprice) total from tpch.orders\"", "SELECT sum(totalprice) FROM orders");
+        assertQuery("SELECT count(*) FROM \"$query:select orderkey from tpch.orders where orderkey < 100\"", "SELECT count(*) FROM orders WHERE orderkey < 100");
+    }
+
     private void assertOneNotNullResult(String query)
     {
         MaterializedResult results = getQueryRunner().execute(getSession(), query).toTestTypes();
@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.facebook.presto.tests.AbstractTestQueryFramework;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixQueryRunner.getLayoutSortOrder;
+import static io.airlift.tpch.TpchTable.ORDERS;
+import static org.testng.Assert.assertEquals;
+
+@Test(singleThreaded = true)
+public class TestPhoenixRowKeyOrderedScans
+        extends AbstractTestQueryFramework
+{
+    public TestPhoenixRowKeyOrderedScans()
+            throws Exception
+    {
+        super(() -> PhoenixQueryRunner.createPhoenixQueryRunner(4, ImmutableMap.of(), ImmutableMap.of("row-key-ordered-scans", "true"), ImmutableList.of(ORDERS)));
+    }
+
+    @Test
+    public void testLayoutSortOrder()
+    {
+        assertUpdate("CREATE TABLE test_ordered_layout WITH (ROWKEYS = ARRAY['orderkey', 'custkey']) AS SELECT orderkey, custkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertEquals(getLayoutSortOrder(getQueryRunner(), getSession(), "test_ordered_layout"), ImmutableList.of("orderkey ASC_NULLS_FIRST", "custkey ASC_NULLS_FIRST"));
+        assertQuery("SELECT orderkey, custkey, sum(totalprice) FROM test_ordered_layout GROUP BY orderkey, custkey", "SELECT orderkey, custkey, sum(totalprice) FROM orders GROUP BY orderkey, custkey");
+        assertQuery("SELECT orderkey, totalprice FROM test_ordered_layout ORDER BY orderkey LIMIT 10", "SELECT orderkey, totalprice FROM orders ORDER BY orderkey LIMIT 10");
+        assertUpdate("DROP TABLE test_ordered_layout");
+    }
+
+    @Test
+    public void testSaltedLayoutSortOrder()
+    {
+        // the salt byte is not a Presto column, each split still reads a single bucket in key order
+        assertUpdate("CREATE TABLE test_salted_ordered_layout WITH (ROWKEYS = ARRAY['clerk', 'orderkey'], SALT_BUCKETS = 4) AS SELECT clerk, orderkey, totalprice FROM orders", "SELECT count(*) FROM orders");
+        assertEquals(getLayoutSortOrder(getQueryRunner(), getSession(), "test_salted_ordered_layout"), ImmutableList.of("clerk ASC_NULLS_FIRST", "orderkey ASC_NULLS_FIRST"));
+        assertQuery("SELECT clerk, count(*) FROM test_salted_ordered_layout GROUP BY clerk", "SELECT clerk, count(*) FROM orders GROUP BY clerk");
+        assertUpdate("DROP TABLE test_salted_ordered_layout");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import io.airlift.units.Duration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.NotServingRegionException;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.phoenix.exception.SQLExceptionCode;
+import org.apache.phoenix.exception.SQLExceptionInfo;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLTransientException;
+import java.util.List;
+
+import static com.facebook.presto.plugin.phoenix.PhoenixWriteRetryPolicy.isRetryable;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestPhoenixWriteRetryPolicy
+{
+    @Test
+    public void testRetryableFailures()
+    {
+        assertTrue(isRetryable(new SQLException(new IOException("connection reset"))));
+        assertTrue(isRetryable(new SQLException(new NotServingRegionException("region moved"))));
+        assertTrue(isRetryable(new SQLException(retriesExhausted(new NotServingRegionException("region moved")))));
+        assertTrue(isRetryable(new SQLTransientException("timed out")));
+        assertTrue(isRetryable(phoenixException(SQLExceptionCode.STALE_REGION_BOUNDARY_CACHE)));
+    }
+
+    @Test
+    public void testNonRetryableFailures()
+    {
+        assertFalse(isRetryable(new SQLException("constraint violation")));
+        assertFalse(isRetryable(new SQLNonTransientException(new IOException("connection reset"))));
+        assertFalse(isRetryable(new SQLException(new DoNotRetryIOException("bad mutation"))));
+        assertFalse(isRetryable(new SQLException(retriesExhausted(new DoNotRetryIOException("bad mutation")))));
+        assertFalse(isRetryable(phoenixException(SQLExceptionCode.DATA_EXCEEDS_MAX_CAPACITY)));
+    }
+
+    @Test
+    public void testBackOff()
+    {
+        PhoenixWriteRetryPolicy policy = new PhoenixWriteRetryPolicy(new PhoenixConfig()
+                .setWriteRetryMaxAttempts(3)
+                .setWriteRetryInitialDelay(new Duration(1, MILLISECONDS))
+                .setWriteRetryMaxDelay(new Duration(1, MILLISECONDS)));
+        SQLException transientFailure = new SQLException(new IOException("connection reset"));
+
+        assertTrue(policy.backOff(1, transientFailure));
+        assertTrue(policy.backOff(2, transientFailure));
+        assertFalse(policy.backOff(3, transientFailure));
+        assertFalse(policy.backOff(1, new SQLException("constraint violation")));
+        assertEquals(policy.getRetries().getTotalCount(), 2);
+        assertEquals(policy.getFailures().getTotalCount(), 2);
+    }
+
+    private static SQLException phoenixException(SQLExceptionCode code)
+    {
+        return new SQLExceptionInfo.Builder(code).build().buildException();
+    }
+
+    private static RetriesExhaustedWithDetailsException retriesExhausted(Throwable cause)
+    {
+        List<Throwable> causes = singletonList(cause);
+        List<Row> actions = singletonList(new Put(new byte[] {1}));
+        return new RetriesExhaustedWithDetailsException(causes, actions, singletonList("localhost:60020"));
+    }
+}
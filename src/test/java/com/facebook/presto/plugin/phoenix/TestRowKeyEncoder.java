@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.plugin.phoenix;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.phoenix.schema.SortOrder;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestRowKeyEncoder
+{
+    @Test
+    public void testSaltBucketOfHighSaltByte()
+    {
+        assertEquals(RowKeyEncoder.getSaltBucket(new byte[] {(byte) 0x80, 1}), 128);
+        assertEquals(RowKeyEncoder.getSaltBucket(new byte[] {(byte) 0xFF}), 255);
+        assertEquals(RowKeyEncoder.getSaltBucket(new byte[0]), 0);
+    }
+
+    @Test
+    public void testSaltBucketsAbove128()
+    {
+        int saltBuckets = 200;
+        RowKeyEncoder encoder = new RowKeyEncoder(ImmutableList.of(new PhoenixKeyColumn("BIGINT", SortOrder.ASC, null)), true, Optional.of(saltBuckets));
+
+        Set<Integer> buckets = new HashSet<>();
+        for (long key = 0; key < 10_000; key++) {
+            int bucket = RowKeyEncoder.getSaltBucket(encoder.encode(new Object[] {key}));
+            assertTrue(bucket >= 0 && bucket < saltBuckets, "bucket out of range: " + bucket);
+            buckets.add(bucket);
+        }
+        assertEquals(buckets.size(), saltBuckets);
+    }
+}